@@ -0,0 +1,91 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.mockftpserver.fake.FakeFtpServer;
+import org.mockftpserver.fake.UserAccount;
+import org.mockftpserver.fake.filesystem.DirectoryEntry;
+import org.mockftpserver.fake.filesystem.FileSystem;
+import org.mockftpserver.fake.filesystem.UnixFakeFileSystem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * latency of a single picture upload with a new connection per upload (as before) and with a pooled connection,
+ * against an in-process FTP server. Run with {@code ./gradlew jmh}.
+ * <p>
+ * On loopback the difference is the cost of connect, login and mode negotiation; against the real storage server every
+ * one of those commands is an additional network round trip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FTPClientPoolBenchmark {
+
+    private static final String USER = "cozyserver";
+    private static final String PASSWORD = "benchmark";
+    private static final byte[] PICTURE = new byte[32 * 1024];
+
+    private FakeFtpServer server;
+    private FTPClientPool pool;
+    private int port;
+
+    @Setup
+    public void setup() throws InterruptedException {
+        FileSystem fileSystem = new UnixFakeFileSystem();
+        fileSystem.add(new DirectoryEntry("/pictures"));
+
+        server = new FakeFtpServer();
+        server.setServerControlPort(0);
+        server.setFileSystem(fileSystem);
+        server.addUserAccount(new UserAccount(USER, PASSWORD, "/pictures"));
+        server.start();
+
+        while (!server.isStarted()) {
+            Thread.sleep(10);
+        }
+
+        port = server.getServerControlPort();
+        pool = new FTPClientPool("localhost", port, USER, PASSWORD, new GenericObjectPoolConfig<>());
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.close();
+        server.stop();
+    }
+
+    @Benchmark
+    public void connectPerUpload() throws Exception {
+        FTPUploader uploader = new FTPUploader("localhost", port, USER, PASSWORD);
+
+        try {
+            uploader.storeFile(new ByteArrayInputStream(PICTURE), "picture.jpg");
+        } finally {
+            uploader.disconnect();
+        }
+    }
+
+    @Benchmark
+    public void pooledUpload() throws IOException {
+        pool.execute(uploader -> {
+            uploader.storeFile(new ByteArrayInputStream(PICTURE), "picture.jpg");
+            return null;
+        });
+    }
+}
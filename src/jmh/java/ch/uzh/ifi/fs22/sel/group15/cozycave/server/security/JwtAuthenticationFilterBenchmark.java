@@ -0,0 +1,143 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.security;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.Role;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.UserRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * authentication of a request with a bearer token by the {@link JwtAuthenticationFilter}, with the authorities from
+ * the signed role claims ({@code stateless}) and from the cached principal ({@code cached}). Both run without database
+ * access, what is left is parsing the token and building the authentication. Run with {@code ./gradlew jmh}, add
+ * {@code -prof gc} to the JMH arguments to compare the allocations.
+ * <p>
+ * {@link #streamedAuthorities()} is the authority list as it was built on every call before it was precomputed per
+ * role, {@link #precomputedAuthorities()} the current one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtAuthenticationFilterBenchmark {
+
+    private static final String SECRET = "benchmark";
+    private static final UUID USER_ID = UUID.randomUUID();
+    private static final Role ROLE = Role.STUDENT;
+
+    @Param({"stateless", "cached"})
+    public String mode;
+
+    private JwtAuthenticationFilter filter;
+    private MockHttpServletRequest request;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        TokenVersions tokenVersions = new TokenVersions(userRepository(), SECRET, 100, 3600);
+
+        JwtTokenProvider jwtTokenProvider = new JwtTokenProvider();
+        inject(jwtTokenProvider, "jwtSecret", SECRET);
+        inject(jwtTokenProvider, "expiration", 7);
+        inject(jwtTokenProvider, "tokenVersions", tokenVersions);
+
+        PrincipalCache principalCache = new PrincipalCache(100, 3600);
+        principalCache.get(USER_ID, () -> User.builder()
+                .username(USER_ID.toString())
+                .password("hash")
+                .authorities(ROLE.generatePermittedAuthoritiesList())
+                .build());
+
+        filter = new JwtAuthenticationFilter();
+        inject(filter, "jwtTokenProvider", jwtTokenProvider);
+        inject(filter, "principalCache", principalCache);
+        inject(filter, "statelessRoles", mode.equals("stateless"));
+
+        String token = jwtTokenProvider.generateToken(USER_ID, ROLE.generatePermittedAuthoritiesList().stream()
+                .map(authority -> Role.valueOf(authority.getAuthority().substring(5)))
+                .collect(Collectors.toList()));
+
+        request = new MockHttpServletRequest("GET", "/v1/users");
+        request.addHeader("Authorization", "Bearer " + token);
+    }
+
+    @Benchmark
+    public Authentication authenticate() throws Exception {
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.clearContext();
+
+        return authentication;
+    }
+
+    @Benchmark
+    public Collection<SimpleGrantedAuthority> streamedAuthorities() {
+        return Arrays.stream(Role.values())
+                .filter(role -> role.getRoleId() <= ROLE.getRoleId())
+                .map(Enum::name)
+                .map(r -> "ROLE_" + r)
+                .map(SimpleGrantedAuthority::new)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public Collection<SimpleGrantedAuthority> precomputedAuthorities() {
+        return ROLE.generatePermittedAuthoritiesList();
+    }
+
+    // only the narrow credentials query is used by the token versions
+    private static UserRepository userRepository() {
+        UserRepository.Credentials credentials = new UserRepository.Credentials() {
+            @Override
+            public Role getRole() {
+                return ROLE;
+            }
+
+            @Override
+            public long getPasswordVersion() {
+                return 0;
+            }
+        };
+
+        return (UserRepository) Proxy.newProxyInstance(UserRepository.class.getClassLoader(),
+                new Class<?>[]{UserRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findCredentialsById")) {
+                        return Optional.of(credentials);
+                    }
+
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static void inject(Object target, String name, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+}
@@ -48,7 +48,9 @@ public class Application {
         return new WebMvcConfigurer() {
             @Override
             public void addCorsMappings(CorsRegistry registry) {
-                registry.addMapping("/**").allowedOrigins("*").allowedMethods("*");
+                registry.addMapping("/**").allowedOrigins("*").allowedMethods("*")
+                        // read by browser clients of the resumable uploads
+                        .exposedHeaders("Location", "Upload-Offset", "Upload-Length");
             }
         };
     }
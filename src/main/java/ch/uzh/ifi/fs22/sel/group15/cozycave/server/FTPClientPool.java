@@ -0,0 +1,127 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * pool of logged in connections to the storage server, so that an upload or a delete does not pay for connect, login
+ * and mode negotiation every time. Idle connections are kept alive (and dropped if dead) with a NOOP by the evictor,
+ * the pool configuration limits the number of idle connections, their idle time and how long a borrow may wait.
+ * <p>
+ * Every connection is checked with a NOOP before it is borrowed as well, a connection the server closed since the last
+ * eviction run is replaced by a new one instead of failing the upload.
+ */
+@Slf4j
+public class FTPClientPool implements AutoCloseable {
+
+    @FunctionalInterface
+    public interface Callback<T> {
+        T doWithUploader(@NotNull FTPUploader uploader) throws IOException;
+    }
+
+    private final GenericObjectPool<FTPUploader> pool;
+
+    public FTPClientPool(String host, int port, String user, String password,
+                         GenericObjectPoolConfig<FTPUploader> config) {
+        GenericObjectPoolConfig<FTPUploader> validatedConfig = config.clone();
+        validatedConfig.setTestOnBorrow(true);
+
+        this.pool = new GenericObjectPool<>(new Factory(host, port, user, password), validatedConfig);
+    }
+
+    /**
+     * runs the callback with a pooled connection. A connection on which the callback failed is closed instead of
+     * being returned to the pool, as its state is unknown.
+     *
+     * @throws IOException if no connection could be borrowed in time or the callback failed
+     */
+    public <T> T execute(@NotNull Callback<T> callback) throws IOException {
+        FTPUploader uploader = borrow();
+
+        try {
+            T result = callback.doWithUploader(uploader);
+            pool.returnObject(uploader);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            invalidate(uploader);
+            throw e;
+        }
+    }
+
+    public int getNumIdle() {
+        return pool.getNumIdle();
+    }
+
+    public int getNumActive() {
+        return pool.getNumActive();
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+    private FTPUploader borrow() throws IOException {
+        try {
+            return pool.borrowObject();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("no connection to the storage server available", e);
+        }
+    }
+
+    private void invalidate(FTPUploader uploader) {
+        try {
+            pool.invalidateObject(uploader);
+        } catch (Exception e) {
+            log.debug("could not invalidate storage connection", e);
+        }
+    }
+
+    private static class Factory extends BasePooledObjectFactory<FTPUploader> {
+
+        private final String host;
+        private final int port;
+        private final String user;
+        private final String password;
+
+        Factory(String host, int port, String user, String password) {
+            this.host = host;
+            this.port = port;
+            this.user = user;
+            this.password = password;
+        }
+
+        @Override
+        public FTPUploader create() throws Exception {
+            return new FTPUploader(host, port, user, password);
+        }
+
+        @Override
+        public PooledObject<FTPUploader> wrap(FTPUploader uploader) {
+            return new DefaultPooledObject<>(uploader);
+        }
+
+        @Override
+        public boolean validateObject(PooledObject<FTPUploader> pooled) {
+            return pooled.getObject().isAlive();
+        }
+
+        @Override
+        public void destroyObject(PooledObject<FTPUploader> pooled) {
+            try {
+                pooled.getObject().disconnect();
+            } catch (RuntimeException e) {
+                log.debug("could not disconnect from storage", e);
+            }
+        }
+    }
+}
@@ -12,32 +12,65 @@ import java.io.*;
 
 public class FTPUploader {
 
+    // files are streamed through a buffer of this size, whatever their size
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     FTPClient ftp = null;
 
     public FTPUploader(String host, String user, String pwd) throws Exception {
-        ftp = new FTPClient();
+        this(host, FTP.DEFAULT_PORT, user, pwd);
         ftp.addProtocolCommandListener(new PrintCommandListener(new PrintWriter(System.out)));
+    }
+
+    public FTPUploader(String host, int port, String user, String pwd) throws Exception {
+        ftp = new FTPClient();
         int reply;
-        ftp.connect(host, 21);
+        ftp.connect(host, port);
         reply = ftp.getReplyCode();
         if (!FTPReply.isPositiveCompletion(reply)) {
             ftp.disconnect();
             throw new Exception("Exception in connecting to FTP Server");
         }
-        ftp.login(user, pwd);
+        if (!ftp.login(user, pwd)) {
+            ftp.disconnect();
+            throw new Exception("Login to FTP Server failed");
+        }
         ftp.setFileType(FTP.BINARY_FILE_TYPE);
         ftp.enterLocalPassiveMode();
+        ftp.setBufferSize(BUFFER_SIZE);
     }
 
     public void uploadFile(MultipartFile file, String filename) {
-        try {
-            InputStream input = new FileInputStream(multipartToFile(file, filename));
-            this.ftp.storeFile(filename, input);
+        // streamed straight from the request, without a copy in a temporary file
+        try (InputStream input = file.getInputStream()) {
+            storeFile(input, filename);
         } catch (SecurityException | IOException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "file couldn't be created");
         }
     }
 
+    /**
+     * stores the stream as a file on the storage server
+     *
+     * @throws IOException if the connection failed or the server refused the file
+     */
+    public void storeFile(InputStream input, String filename) throws IOException {
+        if (!this.ftp.storeFile(filename, input)) {
+            throw new IOException("storage server refused " + filename + ": " + this.ftp.getReplyString());
+        }
+    }
+
+    /**
+     * writes a file from the storage server into the stream
+     *
+     * @throws IOException if the connection failed or the file does not exist
+     */
+    public void retrieveFile(String filename, OutputStream output) throws IOException {
+        if (!this.ftp.retrieveFile(filename, output)) {
+            throw new IOException("storage server could not send " + filename + ": " + this.ftp.getReplyString());
+        }
+    }
+
     public void deleteFile(String filename) {
         try {
             this.ftp.deleteFile(filename);
@@ -46,10 +79,15 @@ public class FTPUploader {
         }
     }
 
-    public File multipartToFile(MultipartFile multipart, String fileName) throws IllegalStateException, IOException {
-        File convFile = new File(System.getProperty("java.io.tmpdir") + "/" + fileName);
-        multipart.transferTo(convFile);
-        return convFile;
+    /**
+     * @return whether the connection is still usable, checked with a NOOP which also keeps the connection alive
+     */
+    public boolean isAlive() {
+        try {
+            return this.ftp.isConnected() && this.ftp.sendNoOp();
+        } catch (IOException e) {
+            return false;
+        }
     }
 
     public void disconnect() {
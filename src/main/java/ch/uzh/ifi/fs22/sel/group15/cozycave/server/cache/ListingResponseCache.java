@@ -0,0 +1,103 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * serialized responses of the public listing endpoints, keyed by path and normalized query parameters. Every change of
+ * a listing (or of something shown in a listing, like its pictures) invalidates all responses, the expiry only bounds
+ * the age of responses showing data which is not changed through the listing and picture services (e.g. the profile
+ * of the publisher).
+ */
+@Component
+@Slf4j
+public class ListingResponseCache {
+
+    private final Cache<String, CachedResponse> responses;
+
+    // incremented on every invalidation, responses rendered before an invalidation are not stored
+    private final AtomicLong generation = new AtomicLong();
+
+    public ListingResponseCache(
+            @Value("${cozycave.listings.response_cache.max_bytes:33554432}") long maxBytes,
+            @Value("${cozycave.listings.response_cache.ttl_seconds:300}") long ttlSeconds) {
+        this.responses = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .<String, CachedResponse>weigher((key, response) -> key.length() + response.body().length)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
+
+    public record CachedResponse(String etag, String contentType, byte[] body) {
+
+        public CachedResponse(String contentType, byte[] body) {
+            this("\"" + Hashing.sha256().hashBytes(body) + "\"", contentType, body);
+        }
+    }
+
+    public @NotNull Optional<CachedResponse> get(@NotNull String key) {
+        return Optional.ofNullable(responses.getIfPresent(key));
+    }
+
+    /**
+     * @return current generation, to be passed to {@link #put(String, long, CachedResponse)} once the response is
+     * rendered
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * stores a response unless the cache was invalidated since {@code renderedAt}
+     *
+     * @param key        normalized request
+     * @param renderedAt generation read before the data of the response was loaded
+     * @param response   rendered response
+     */
+    public void put(@NotNull String key, long renderedAt, @NotNull CachedResponse response) {
+        if (generation.get() != renderedAt) {
+            return;
+        }
+
+        responses.put(key, response);
+
+        // an invalidation between the check and the put must not be lost
+        if (generation.get() != renderedAt) {
+            responses.invalidate(key);
+        }
+    }
+
+    /**
+     * drops all responses. Inside of a transaction the responses are dropped again after the commit, otherwise a
+     * request could cache the old state between the invalidation and the commit.
+     */
+    public void invalidate() {
+        invalidateNow();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidateNow();
+                }
+            });
+        }
+    }
+
+    private void invalidateNow() {
+        generation.incrementAndGet();
+        responses.invalidateAll();
+        log.debug("invalidated cached listing responses");
+    }
+}
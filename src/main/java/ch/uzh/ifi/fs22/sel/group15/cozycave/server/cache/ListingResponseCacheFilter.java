@@ -0,0 +1,145 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.cache;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.cache.ListingResponseCache.CachedResponse;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * answers {@code GET /v1/listings} and {@code GET /v1/listings/{id}} from the {@link ListingResponseCache}. Every
+ * response carries a strong ETag, a request with a matching {@code If-None-Match} gets a 304 without a body.
+ * <p>
+ * Registered behind the Spring Security filter chain, so CORS and the security headers are still applied.
+ */
+public class ListingResponseCacheFilter extends OncePerRequestFilter {
+
+    private static final Pattern CACHED_PATHS = Pattern.compile(
+            "/v1/listings(/[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12})?/?");
+
+    private static final UrlPathHelper URL_PATH_HELPER = new UrlPathHelper();
+
+    private final ListingResponseCache listingResponseCache;
+
+    public ListingResponseCacheFilter(ListingResponseCache listingResponseCache) {
+        this.listingResponseCache = listingResponseCache;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NotNull HttpServletRequest request) {
+        return !HttpMethod.GET.matches(request.getMethod())
+                || !CACHED_PATHS.matcher(URL_PATH_HELPER.getPathWithinApplication(request)).matches();
+    }
+
+    @Override
+    protected void doFilterInternal(@NotNull HttpServletRequest request, @NotNull HttpServletResponse response,
+                                    @NotNull FilterChain filterChain) throws ServletException, IOException {
+        String key = key(request);
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+
+        Optional<CachedResponse> cached = listingResponseCache.get(key);
+
+        if (cached.isPresent()) {
+            write(response, cached.get(), ifNoneMatch);
+            return;
+        }
+
+        long generation = listingResponseCache.generation();
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+
+        filterChain.doFilter(request, wrapper);
+
+        if (wrapper.getStatus() != HttpStatus.OK.value()) {
+            wrapper.copyBodyToResponse();
+            return;
+        }
+
+        CachedResponse rendered = new CachedResponse(wrapper.getContentType(), wrapper.getContentAsByteArray());
+        listingResponseCache.put(key, generation, rendered);
+
+        // the body was only buffered, the response itself is still uncommitted
+        wrapper.resetBuffer();
+        write(wrapper, rendered, ifNoneMatch);
+        wrapper.copyBodyToResponse();
+    }
+
+    private static void write(HttpServletResponse response, CachedResponse cached, @Nullable String ifNoneMatch)
+            throws IOException {
+        response.setHeader(HttpHeaders.ETAG, cached.etag());
+        // clients may keep the response but have to revalidate it before using it again
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+
+        if (matches(ifNoneMatch, cached.etag())) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+
+        response.setStatus(HttpStatus.OK.value());
+        if (cached.contentType() != null) {
+            response.setContentType(cached.contentType());
+        }
+        response.setContentLength(cached.body().length);
+        response.getOutputStream().write(cached.body());
+    }
+
+    // If-None-Match uses the weak comparison, so W/"..." matches as well
+    static boolean matches(@Nullable String ifNoneMatch, @NotNull String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return path without trailing slash and the query parameters sorted by name, so that equivalent requests share
+     * a cache entry; the order of repeated parameters is kept as it can be significant
+     */
+    static @NotNull String key(@NotNull HttpServletRequest request) {
+        String path = URL_PATH_HELPER.getPathWithinApplication(request);
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+
+        StringJoiner query = new StringJoiner("&", path + "?", "");
+
+        for (Map.Entry<String, String[]> parameter : new TreeMap<>(request.getParameterMap()).entrySet()) {
+            String name = URLEncoder.encode(parameter.getKey(), StandardCharsets.UTF_8);
+
+            for (String value : parameter.getValue()) {
+                query.add(name + "=" + URLEncoder.encode(value, StandardCharsets.UTF_8));
+            }
+        }
+
+        return query.toString();
+    }
+}
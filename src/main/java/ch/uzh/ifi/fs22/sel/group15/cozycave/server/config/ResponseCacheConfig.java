@@ -0,0 +1,25 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.config;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.cache.ListingResponseCache;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.cache.ListingResponseCacheFilter;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ResponseCacheConfig {
+
+    @Bean
+    public FilterRegistrationBean<ListingResponseCacheFilter> listingResponseCacheFilter(
+            ListingResponseCache listingResponseCache) {
+        FilterRegistrationBean<ListingResponseCacheFilter> registration =
+                new FilterRegistrationBean<>(new ListingResponseCacheFilter(listingResponseCache));
+
+        registration.addUrlPatterns("/v1/listings", "/v1/listings/*");
+        // behind Spring Security, which handles CORS and writes the security headers
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER + 1);
+
+        return registration;
+    }
+}
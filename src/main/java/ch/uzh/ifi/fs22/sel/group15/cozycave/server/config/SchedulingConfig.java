@@ -0,0 +1,9 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -2,6 +2,7 @@ package ch.uzh.ifi.fs22.sel.group15.cozycave.server.config;
 
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.security.JwtAuthenticationEntryPoint;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.security.JwtAuthenticationFilter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -11,15 +12,20 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
+import java.util.Map;
+
 @Configuration
 @EnableWebSecurity
 public class SecurityConfig extends WebSecurityConfigurerAdapter {
 
     public static final int PASSWORD_MIN_LENGTH = 8;
 
+    private static final String BCRYPT = "bcrypt";
+
     private final JwtAuthenticationEntryPoint jwtAuthenticationEntryPoint;
 
     public SecurityConfig(JwtAuthenticationEntryPoint jwtAuthenticationEntryPoint) {
@@ -31,9 +37,20 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
         return new JwtAuthenticationFilter();
     }
 
+    /**
+     * new hashes are prefixed with the id of their encoder. A hash of another encoder or with a lower work factor is
+     * replaced on the next successful login, see {@link
+     * ch.uzh.ifi.fs22.sel.group15.cozycave.server.security.IUserDetailsService#updatePassword}.
+     */
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(@Value("${cozycave.security.password.bcrypt_strength:10}") int bcryptStrength) {
+        PasswordEncoder bcrypt = new BCryptPasswordEncoder(bcryptStrength);
+
+        DelegatingPasswordEncoder passwordEncoder = new DelegatingPasswordEncoder(BCRYPT, Map.of(BCRYPT, bcrypt));
+        // hashes stored before the prefix was introduced are plain bcrypt hashes
+        passwordEncoder.setDefaultPasswordEncoderForMatches(bcrypt);
+
+        return passwordEncoder;
     }
 
     @Bean(BeanIds.AUTHENTICATION_MANAGER)
@@ -69,6 +86,8 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 "/v1/pictures/{id}/",
                 "/v1/pictures/{id}/view",
                 "/v1/pictures/{id}/view/",
+                "/v1/pictures/{id}/content",
+                "/v1/pictures/{id}/content/",
                 "/v1/pictures/listings/{listingId}/floorplan",
                 "/v1/pictures/listings/{listingId}/floorplan/",
                 "/v1/pictures/listings/{listingId}",
@@ -0,0 +1,67 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.config;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.FTPClientPool;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.FTPUploader;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage.FtpPictureStorage;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage.LocalPictureStorage;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage.PictureStorage;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * picks the {@link PictureStorage} backend with {@code cozycave.storage.type} (ftp or local). Another backend, e.g. an
+ * S3 compatible one, only needs an implementation of the interface and a bean method here.
+ */
+@Configuration
+public class StorageConfig {
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "cozycave.storage.type", havingValue = "ftp", matchIfMissing = true)
+    public FTPClientPool ftpClientPool(
+            @Value("${cozycave.storage.ftp.host:database.cozycave.ch}") String host,
+            @Value("${cozycave.storage.ftp.port:21}") int port,
+            @Value("${cozycave.storage.ftp.user:cozyserver}") String user,
+            @Value("${cozycave.storage.ftp.password:cozyserver!!??}") String password,
+            @Value("${cozycave.storage.ftp.pool.max_total:8}") int maxTotal,
+            @Value("${cozycave.storage.ftp.pool.max_idle:4}") int maxIdle,
+            @Value("${cozycave.storage.ftp.pool.borrow_timeout_ms:5000}") long borrowTimeoutMillis,
+            @Value("${cozycave.storage.ftp.pool.keepalive_ms:30000}") long keepAliveMillis,
+            @Value("${cozycave.storage.ftp.pool.max_idle_time_ms:240000}") long maxIdleTimeMillis) {
+        GenericObjectPoolConfig<FTPUploader> config = new GenericObjectPoolConfig<>();
+        config.setMaxTotal(maxTotal);
+        config.setMaxIdle(maxIdle);
+        config.setMaxWaitMillis(borrowTimeoutMillis);
+        // the evictor sends a NOOP to every idle connection, dead ones are dropped
+        config.setTestWhileIdle(true);
+        config.setTimeBetweenEvictionRunsMillis(keepAliveMillis);
+        config.setNumTestsPerEvictionRun(maxIdle);
+        // closed before the server drops them, most servers time out idle sessions after 300 seconds
+        config.setMinEvictableIdleTimeMillis(maxIdleTimeMillis);
+        config.setJmxEnabled(false);
+
+        return new FTPClientPool(host, port, user, password, config);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "cozycave.storage.type", havingValue = "ftp", matchIfMissing = true)
+    public PictureStorage ftpPictureStorage(
+            FTPClientPool ftpClientPool,
+            @Value("${cozycave.storage.public_url:https://pics.cozycave.ch/}") String publicUrlPrefix) {
+        return new FtpPictureStorage(ftpClientPool, publicUrlPrefix);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "cozycave.storage.type", havingValue = "local")
+    public PictureStorage localPictureStorage(
+            @Value("${cozycave.storage.local.root:./storage/pictures}") String root,
+            @Value("${cozycave.storage.public_url:https://pics.cozycave.ch/}") String publicUrlPrefix)
+            throws IOException {
+        return new LocalPictureStorage(Path.of(root), publicUrlPrefix);
+    }
+}
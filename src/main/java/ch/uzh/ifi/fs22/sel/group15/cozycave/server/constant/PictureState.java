@@ -0,0 +1,9 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant;
+
+public enum PictureState {
+    // stored in the database, the file is still waiting for the upload to the storage server
+    PENDING,
+    READY,
+    // the upload was given up after too many attempts
+    FAILED
+}
@@ -0,0 +1,25 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant;
+
+/**
+ * downscaled copies of an uploaded picture, ordered from the smallest to the largest
+ */
+public enum PictureVariant {
+    THUMBNAIL(320),
+    MEDIUM(800),
+    LARGE(1600);
+
+    // maximum width in pixels
+    private final int width;
+
+    PictureVariant(int width) {
+        this.width = width;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public String getSuffix() {
+        return name().toLowerCase();
+    }
+}
@@ -5,6 +5,9 @@ import org.springframework.security.core.authority.SimpleGrantedAuthority;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
 
 public enum Role {
     LANDLORD(1),
@@ -13,6 +16,26 @@ public enum Role {
     ADMIN(999),
     INTERNAL(1000);
 
+    // computed once, the authorities are needed on every login and every authenticated request
+    private static final Map<Role, Collection<SimpleGrantedAuthority>> PERMITTED_AUTHORITIES;
+
+    static {
+        Map<Role, SimpleGrantedAuthority> authorities = new EnumMap<>(Role.class);
+        for (Role role : values()) {
+            authorities.put(role, new SimpleGrantedAuthority("ROLE_" + role.name()));
+        }
+
+        Map<Role, Collection<SimpleGrantedAuthority>> permittedAuthorities = new EnumMap<>(Role.class);
+        for (Role role : values()) {
+            permittedAuthorities.put(role, Arrays.stream(values())
+                    .filter(permitted -> permitted.lessEquals(role))
+                    .map(authorities::get)
+                    .toList());
+        }
+
+        PERMITTED_AUTHORITIES = Collections.unmodifiableMap(permittedAuthorities);
+    }
+
     private final int id;
 
     Role(int id) {
@@ -49,13 +72,11 @@ public enum Role {
         return this.id < rank.getRoleId();
     }
 
+    /**
+     * @return authorities of this role and all lower roles, the same immutable collection on every call
+     */
     public Collection<SimpleGrantedAuthority> generatePermittedAuthoritiesList() {
-        return Arrays.stream(Role.values())
-                .filter(role -> role.getRoleId() <= this.getRoleId())
-                .map(Enum::name)
-                .map(r -> "ROLE_" + r)
-                .map(SimpleGrantedAuthority::new)
-                .collect(java.util.stream.Collectors.toList());
+        return PERMITTED_AUTHORITIES.get(this);
     }
 
     public boolean isTeam() {
@@ -0,0 +1,6 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant;
+
+public enum StorageOperation {
+    // remove a file which is not referenced by any picture anymore
+    DELETE
+}
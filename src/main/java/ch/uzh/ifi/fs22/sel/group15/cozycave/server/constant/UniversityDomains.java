@@ -1,109 +1,205 @@
 package ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.neovisionaries.i18n.CountryCode;
-import com.sun.istack.NotNull;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.util.HashSet;
-import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-
+import org.springframework.util.StringUtils;
+
+/**
+ * domains of the universities whose students are registered as {@link Role#STUDENT}. The bundled snapshot (same format
+ * as the source) is loaded at startup, so that startup does not depend on the source being reachable. The source is
+ * queried in the background and replaces the snapshot if it answers with a non-empty list.
+ * <p>
+ * Domains are indexed, an email is matched by a single lookup of its domain.
+ */
 @Component
 @ToString
 @EqualsAndHashCode
 public class UniversityDomains {
 
-    private final HashSet<University> universities;
+    private static final Logger log = LoggerFactory.getLogger(UniversityDomains.class);
+
+    static final String SNAPSHOT = "universities/switzerland.json";
+
+    private final @Nullable URI source;
+
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private final @Nullable HttpClient client;
 
+    // replaced as a whole on a refresh
+    private volatile Index index;
+
+    /**
+     * only the bundled snapshot, without refreshes
+     */
     public UniversityDomains() {
-        universities = generateUniversities();
+        this(new ClassPathResource(SNAPSHOT), "");
+    }
+
+    @Autowired
+    public UniversityDomains(
+            @Value("${cozycave.universities.snapshot:classpath:" + SNAPSHOT + "}") Resource snapshot,
+            @Value("${cozycave.universities.source:}") String source) {
+        this.source = StringUtils.hasText(source) ? URI.create(source) : null;
+        this.client = this.source != null
+                ? HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build()
+                : null;
+
+        List<University> universities = List.of();
+
+        try (Reader reader = new InputStreamReader(snapshot.getInputStream(), StandardCharsets.UTF_8)) {
+            universities = parse(JsonParser.parseReader(reader).getAsJsonArray());
+        } catch (IOException | RuntimeException e) {
+            log.error("could not read university domains from {}, every user will be a landlord until the refresh",
+                    snapshot, e);
+        }
+
+        this.index = new Index(universities);
+
+        log.info("loaded {} universities from {}", universities.size(), snapshot);
     }
 
     public ImmutableSet<University> getUniversities() {
-        return ImmutableSet.copyOf(universities);
+        return index.universities();
     }
 
-    public @Nullable
-    University getUniversityByDomain(String domain) {
-        return universities.stream().filter(u -> u.matchesDomain(domain)).findFirst().orElse(null);
+    public @Nullable University getUniversityByDomain(String domain) {
+        return index.byDomain().get(domain.toLowerCase(Locale.ROOT));
     }
 
-    public @Nullable
-    University getUniversityByEmail(String email) {
-        return universities.stream().filter(u -> u.matchesEmail(email)).findFirst().orElse(null);
+    public @Nullable University getUniversityByEmail(String email) {
+        int at = email.lastIndexOf('@');
+
+        return at < 0 ? null : getUniversityByDomain(email.substring(at + 1));
     }
 
     public boolean matchesDomain(String domain) {
-        return universities.stream().anyMatch(u -> u.matchesDomain(domain));
+        return getUniversityByDomain(domain) != null;
     }
 
     public boolean matchesEmail(String email) {
-        return universities.stream().anyMatch(u -> u.matchesEmail(email));
+        return getUniversityByEmail(email) != null;
     }
 
-    private @NotNull
-    HashSet<University> generateUniversities() {
-        final Logger logger = LoggerFactory.getLogger(UniversityDomains.class);
-
-        HashSet<University> universities = new HashSet<>();
+    /**
+     * queries the source without blocking the scheduler, the snapshot is kept if the source is not reachable or
+     * answers with an error or an empty list
+     */
+    @Scheduled(
+            initialDelayString = "${cozycave.universities.refresh_initial_delay_ms:60000}",
+            fixedDelayString = "${cozycave.universities.refresh_ms:86400000}")
+    public void refresh() {
+        if (source == null || client == null) {
+            return;
+        }
 
-        HttpClient client = HttpClient.newHttpClient();
         HttpRequest request = HttpRequest.newBuilder()
                 .GET()
-                .uri(URI.create("http://universities.hipolabs.com/search?country=Switzerland"))
+                .uri(source)
                 .timeout(Duration.ofSeconds(10))
                 .build();
 
-        HttpResponse<String> response = null;
+        client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenAccept(response -> {
+                    if (response.statusCode() != 200) {
+                        log.warn("could not refresh university domains, status code: {}", response.statusCode());
+                        return;
+                    }
+
+                    List<University> universities = parse(JsonParser.parseString(response.body()).getAsJsonArray());
+
+                    if (universities.isEmpty()) {
+                        log.warn("could not refresh university domains, {} returned no universities", source);
+                        return;
+                    }
+
+                    index = new Index(universities);
+                    log.info("refreshed {} universities from {}", universities.size(), source);
+                })
+                .exceptionally(e -> {
+                    log.warn("could not refresh university domains from {}: {}", source, e.toString());
+                    return null;
+                });
+    }
+
+    static @NotNull List<University> parse(@NotNull JsonArray array) {
+        List<University> universities = new ArrayList<>();
 
-        try {
-            response = client.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (InterruptedException | IOException e) {
-            logger.error("Could not get university domains!", e);
-            e.printStackTrace();
-        }
+        for (JsonElement jsonElement : array) {
+            JsonObject o = jsonElement.getAsJsonObject();
 
-        assert response != null;
-        assert response.body() != null;
-        assert !response.body().equals("");
+            String name = o.get("name").getAsString();
 
-        JsonArray r = JsonParser.parseString(response.body()).getAsJsonArray();
+            ImmutableSet.Builder<String> domains = ImmutableSet.builder();
+            o.get("domains").getAsJsonArray().forEach(d -> domains.add(d.getAsString()));
 
-        if (response.statusCode() != 200) {
-            logger.error("Could not get university domains! Status code: " + response.statusCode());
-            return universities;
+            universities.add(new University(name, country(o), domains.build()));
         }
 
-        logger.debug("Received university domains!");
+        return universities;
+    }
 
-        for (JsonElement jsonElement : r) {
-            JsonObject o = jsonElement.getAsJsonObject();
+    private static @NotNull CountryCode country(@NotNull JsonObject o) {
+        if (o.has("alpha_two_code")) {
+            CountryCode country = CountryCode.getByCode(o.get("alpha_two_code").getAsString());
 
-            String name = o.get("name").getAsString();
-            JsonArray jsonDomains = o.get("domains").getAsJsonArray();
+            if (country != null) {
+                return country;
+            }
+        }
 
-            HashSet<String> domains = new HashSet<>();
-            jsonDomains.forEach(d -> domains.add(d.getAsString().toLowerCase()));
+        List<CountryCode> countries = CountryCode.findByName(o.get("country").getAsString());
+        return countries.isEmpty() ? CountryCode.UNDEFINED : countries.get(0);
+    }
 
-            CountryCode country = CountryCode.findByName(o.get("country").getAsString()).get(0);
+    private record Index(ImmutableSet<University> universities, ImmutableMap<String, University> byDomain) {
 
-            universities.add(new University(name, country, ImmutableSet.copyOf(domains)));
+        Index(List<University> universities) {
+            this(ImmutableSet.copyOf(universities), index(universities));
         }
 
-        return universities;
+        private static ImmutableMap<String, University> index(List<University> universities) {
+            Map<String, University> byDomain = new HashMap<>();
+
+            for (University university : universities) {
+                for (String domain : university.domains()) {
+                    byDomain.putIfAbsent(domain, university);
+                }
+            }
+
+            return ImmutableMap.copyOf(byDomain);
+        }
     }
 
     record University(
@@ -113,15 +209,16 @@ public class UniversityDomains {
     ) {
 
         University {
-            domains = domains.stream().map(String::toLowerCase).collect(ImmutableSet.toImmutableSet());
+            domains = domains.stream().map(d -> d.toLowerCase(Locale.ROOT)).collect(ImmutableSet.toImmutableSet());
         }
 
         public boolean matchesDomain(String domain) {
-            return domains.contains(domain);
+            return domains.contains(domain.toLowerCase(Locale.ROOT));
         }
 
         public boolean matchesEmail(String email) {
-            return domains.stream().anyMatch(d -> email.toLowerCase().endsWith("@" + d));
+            int at = email.lastIndexOf('@');
+            return at >= 0 && matchesDomain(email.substring(at + 1));
         }
     }
 }
@@ -5,6 +5,7 @@ import ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.dto.users.UserGetDto;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.dto.users.UserPostPutDto;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.mapper.UserMapper;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.security.JwtTokenProvider;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.security.LoginExecutor;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.service.PictureService;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.service.UserService;
 import org.slf4j.Logger;
@@ -13,10 +14,13 @@ import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.concurrent.CompletableFuture;
+
 @RestController
 @RequestMapping(value = "/v1/auth")
 // TODO: add logout possibility if required (individual token for each user)
@@ -29,51 +33,57 @@ public class AuthenticationController {
     private final PasswordEncoder passwordEncoder;
     private final AuthenticationManager authenticationManager;
     private final JwtTokenProvider jwtTokenProvider;
+    private final LoginExecutor loginExecutor;
 
     public AuthenticationController(UserService userService, PictureService pictureService, PasswordEncoder passwordEncoder,
-                                    AuthenticationManager authenticationManager, JwtTokenProvider jwtTokenProvider) {
+                                    AuthenticationManager authenticationManager, JwtTokenProvider jwtTokenProvider,
+                                    LoginExecutor loginExecutor) {
         this.userService = userService;
         this.pictureService = pictureService;
         this.passwordEncoder = passwordEncoder;
         this.authenticationManager = authenticationManager;
         this.jwtTokenProvider = jwtTokenProvider;
+        this.loginExecutor = loginExecutor;
     }
 
     @PostMapping("/register")
     @ResponseStatus(HttpStatus.CREATED)
     @ResponseBody
-    public UserGetDto register(@RequestBody UserPostPutDto userPostPutDto) {
+    public CompletableFuture<UserGetDto> register(@RequestBody UserPostPutDto userPostPutDto) {
         log.debug("new user registration try: {}", userPostPutDto.toString());
 
         User toBeCreatedUser = UserMapper.INSTANCE.userPostPutDtoToUser(userPostPutDto);
 
-        User user = userService.createUser(toBeCreatedUser, null);
-        // set default picture to gravatar profile picture
-        if (user.getDetails().getPicture() == null) {
-            //createdUser.getDetails().setPicture(setGravatarPicture(newUser));
-            user = pictureService.setGravatarPicture(user);
-        }
+        // the password is hashed and verified again, the request thread is released in the meantime
+        return loginExecutor.submit(() -> {
+            User user = userService.createUser(toBeCreatedUser, null);
+            // set default picture to gravatar profile picture
+            if (user.getDetails().getPicture() == null) {
+                //createdUser.getDetails().setPicture(setGravatarPicture(newUser));
+                user = pictureService.setGravatarPicture(user);
+            }
 
-        UserGetDto result = UserMapper.INSTANCE.userToUserGetDto(user);
+            UserGetDto result = UserMapper.INSTANCE.userToUserGetDto(user);
 
-        Authentication authentication = createAuthentication(
-                user,
-                userPostPutDto.getAuthenticationData().getPassword()
-        );
+            Authentication authentication = createAuthentication(
+                    user,
+                    userPostPutDto.getAuthenticationData().getPassword()
+            );
 
-        result.getAuthenticationData().setToken(
-                jwtTokenProvider.generateToken(authentication)
-        );
+            result.getAuthenticationData().setToken(
+                    jwtTokenProvider.generateToken(authentication)
+            );
 
-        log.info("new user registered with id: {}", user.getId());
+            log.info("new user registered with id: {}", user.getId());
 
-        return result;
+            return result;
+        });
     }
 
     @PutMapping("/login")
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
-    public UserGetDto login(@RequestBody UserPostPutDto userPostPutDto) {
+    public CompletableFuture<UserGetDto> login(@RequestBody UserPostPutDto userPostPutDto) {
         log.debug("new user login try: {}", userPostPutDto.getAuthenticationData().getEmail());
 
         User user = userService.findUserByEmail(userPostPutDto.getAuthenticationData().getEmail())
@@ -85,27 +95,36 @@ public class AuthenticationController {
 
         UserGetDto result = UserMapper.INSTANCE.userToUserGetDto(user);
 
-        Authentication authentication = createAuthentication(
-                user,
-                userPostPutDto.getAuthenticationData().getPassword()
-        );
+        // the password is verified without holding the request thread
+        return loginExecutor.submit(() -> {
+            Authentication authentication = createAuthentication(
+                    user,
+                    userPostPutDto.getAuthenticationData().getPassword()
+            );
 
-        result.getAuthenticationData().setToken(
-                jwtTokenProvider.generateToken(authentication)
-        );
+            result.getAuthenticationData().setToken(
+                    jwtTokenProvider.generateToken(authentication)
+            );
 
-        log.info("new user logged in with id: {}", user.getId());
+            log.info("new user logged in with id: {}", user.getId());
 
-        return result;
+            return result;
+        });
     }
 
     private Authentication createAuthentication(User user, String passwordRaw) {
-        return authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(
-                        user.getId().toString(),
-                        passwordRaw + user.getAuthenticationData().getSalt(),
-                        user.getRole().generatePermittedAuthoritiesList()
-                )
-        );
+        try {
+            return authenticationManager.authenticate(
+                    new UsernamePasswordAuthenticationToken(
+                            user.getId().toString(),
+                            passwordRaw + user.getAuthenticationData().getSalt(),
+                            user.getRole().generatePermittedAuthoritiesList()
+                    )
+            );
+        } catch (AuthenticationException e) {
+            // outside of the security filters of the request, so it is not translated by them
+            log.debug("login of user with id {} failed: {}", user.getId(), e.getMessage());
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "invalid login data");
+        }
     }
 }
@@ -5,26 +5,40 @@ import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.ListingType;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.Role;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.controller.ListingController.ListingFilter.FilterPair;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.controller.ListingController.ListingFilter.ListingFilters;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.Location;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.applications.Application;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.listings.Listing;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.User;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.geo.GeoPoint;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.dto.applications.ApplicationGetDto;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.dto.applications.ApplicationPostPutDto;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.dto.listings.ListingGetDto;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.dto.listings.ListingPageDto;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.dto.listings.ListingPostPutDto;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.dto.listings.ListingSummaryDto;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.mapper.ApplicationMapper;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.ListingCursor;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.ListingSpecifications;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.mapper.ListingMapper;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.search.ListingSearchIndex;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.service.ApplicationService;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.service.ListingService;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.service.PictureService;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.service.UserService;
 import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -40,6 +54,14 @@ public class ListingController {
     private final ApplicationService applicationService;
     private final PictureService pictureService;
 
+    private static final String RELEVANCE = "RELEVANCE";
+
+    @Value("${cozycave.listings.legacy_unpaged:true}")
+    private boolean legacyUnpaged;
+
+    @Value("${cozycave.listings.max_page_size:100}")
+    private int maxPageSize;
+
     ListingController(ListingService listingService, UserService userService, ApplicationService applicationService, PictureService pictureService) {
         this.listingService = listingService;
         this.userService = userService;
@@ -48,10 +70,54 @@ public class ListingController {
     }
 
     // Get all listings in a list and even e able to filter
-    @GetMapping("/listings")
+    @GetMapping(value = "/listings", params = "!limit")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public List<?> getAllListingsFiltered(
+            @RequestParam(name = "MIN_RENT") Optional<Integer> minRent,
+            @RequestParam(name = "MAX_RENT") Optional<Integer> maxRent,
+            @RequestParam(name = "AVAILABLE_TO") Optional<List<String>> availableTo,
+            @RequestParam(name = "LISTING_TYPE") Optional<List<String>> listingType,
+            @RequestParam(name = "CITY") Optional<String> city,
+            @RequestParam(name = "ZIP_CODE") Optional<String> zipCode,
+            @RequestParam(name = "MIN_SQM") Optional<Integer> minSqm,
+            @RequestParam(name = "MAX_SQM") Optional<Integer> maxSqm,
+            @RequestParam(name = "AVAILABLE") Optional<String> available,
+            @RequestParam(name = "SORT") Optional<String> sort,
+            @RequestParam(name = "ORDER") Optional<String> order,
+            @RequestParam(name = "SEARCH") Optional<String> search,
+            @RequestParam(name = "NEAR_LAT") Optional<Double> nearLat,
+            @RequestParam(name = "NEAR_LON") Optional<Double> nearLon,
+            @RequestParam(name = "RADIUS_KM") Optional<Double> radiusKm,
+            @RequestParam(name = "view") Optional<String> view
+    ) {
+        // unpaged responses grow with the whole table, they are only kept for older clients
+        if (!legacyUnpaged) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit is required");
+        }
+
+        ListingQuery listingQuery = createListingQuery(minRent, maxRent, availableTo, listingType, city, zipCode,
+                minSqm, maxSqm, available, sort, order, search, nearLat, nearLon, radiusKm);
+
+        if (isSummaryView(view)) {
+            return listingService.getListingSummaries(
+                    listingQuery.specification(listingService), listingQuery.sort(), Integer.MAX_VALUE);
+        }
+
+        // the database evaluates all filters
+        List<Listing> allListings = listingService.getListings(
+                listingQuery.specification(listingService), listingQuery.sort());
+
+        return allListings.stream()
+                .map(ListingMapper.INSTANCE::listingToListingGetDto)
+                .collect(toList());
+    }
+
+    // Get one page of the listings, the next page is requested with the returned cursor
+    @GetMapping(value = "/listings", params = "limit")
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
-    public List<ListingGetDto> getAllListingsFiltered(
+    public ListingPageDto<?> getListingsPage(
             @RequestParam(name = "MIN_RENT") Optional<Integer> minRent,
             @RequestParam(name = "MAX_RENT") Optional<Integer> maxRent,
             @RequestParam(name = "AVAILABLE_TO") Optional<List<String>> availableTo,
@@ -63,10 +129,153 @@ public class ListingController {
             @RequestParam(name = "AVAILABLE") Optional<String> available,
             @RequestParam(name = "SORT") Optional<String> sort,
             @RequestParam(name = "ORDER") Optional<String> order,
-            @RequestParam(name = "SEARCH") Optional<String> search
+            @RequestParam(name = "SEARCH") Optional<String> search,
+            @RequestParam(name = "NEAR_LAT") Optional<Double> nearLat,
+            @RequestParam(name = "NEAR_LON") Optional<Double> nearLon,
+            @RequestParam(name = "RADIUS_KM") Optional<Double> radiusKm,
+            @RequestParam(name = "limit") int limit,
+            @RequestParam(name = "cursor") Optional<String> cursor,
+            @RequestParam(name = "view") Optional<String> view
+    ) {
+        if (limit < 1 || limit > maxPageSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + maxPageSize);
+        }
+
+        boolean byRelevance = sort.map(RELEVANCE::equalsIgnoreCase).orElse(false);
+        boolean summaryView = isSummaryView(view);
+
+        if (byRelevance && summaryView) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "view=summary does not support SORT=RELEVANCE");
+        }
+
+        ListingQuery listingQuery = createListingQuery(minRent, maxRent, availableTo, listingType, city, zipCode,
+                minSqm, maxSqm, available, byRelevance ? Optional.empty() : sort, order, search,
+                nearLat, nearLon, radiusKm);
+
+        if (byRelevance) {
+            return getRankedListings(listingQuery, limit, cursor.isPresent());
+        }
+
+        // the matches of an index are only passed to the database for the listings of this page
+        Specification<Listing> specification = listingQuery.databaseSpecification();
+        Optional<Set<UUID>> indexMatches = listingQuery.indexMatches(listingService);
+
+        if (listingQuery.sorting() != null) {
+            // listings without a value can not be placed in a keyset order
+            specification = specification.and(ListingSpecifications.hasValue(listingQuery.sorting().getProperty()));
+        }
+
+        if (cursor.isPresent()) {
+            ListingCursor listingCursor;
+            try {
+                listingCursor = ListingCursor.decode(cursor.get());
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid cursor");
+            }
+
+            if (!listingCursor.matches(listingQuery.sortProperty(), listingQuery.direction())) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "cursor does not match SORT and ORDER");
+            }
+
+            specification = specification.and(ListingSpecifications.after(listingCursor));
+        }
+
+        if (indexMatches.isPresent()) {
+            // one more listing than requested tells if there is a next page
+            specification = listingService.restrictToMatches(specification, listingQuery.sortProperty(),
+                    listingQuery.direction(), indexMatches.get(), limit + 1);
+        }
+
+        if (summaryView) {
+            // one more listing than requested tells if there is a next page
+            List<ListingSummaryDto> summaries =
+                    listingService.getListingSummaries(specification, listingQuery.sort(), limit + 1);
+            boolean hasNextPage = summaries.size() > limit;
+            summaries = summaries.subList(0, Math.min(limit, summaries.size()));
+
+            String nextCursor = null;
+            if (hasNextPage) {
+                ListingSummaryDto last = summaries.get(summaries.size() - 1);
+                nextCursor = listingQuery.cursorAfter(
+                        listingQuery.sorting() != null ? listingQuery.sorting().valueOf(last) : null, last.getId());
+            }
+
+            return new ListingPageDto<>(summaries, nextCursor);
+        }
+
+        // one more listing than requested tells if there is a next page
+        List<Listing> listings = listingService.getListings(specification, listingQuery.sort(), limit + 1);
+        boolean hasNextPage = listings.size() > limit;
+        listings = listings.subList(0, Math.min(limit, listings.size()));
+
+        String nextCursor = null;
+        if (hasNextPage) {
+            Listing last = listings.get(listings.size() - 1);
+            nextCursor = listingQuery.cursorAfter(
+                    listingQuery.sorting() != null ? listingQuery.sorting().valueOf(last) : null, last.getId());
+        }
+
+        List<ListingGetDto> page = listings.stream()
+                .map(ListingMapper.INSTANCE::listingToListingGetDto)
+                .collect(toList());
+
+        return new ListingPageDto<>(page, nextCursor);
+    }
+
+    private static boolean isSummaryView(Optional<String> view) {
+        if (view.isEmpty() || view.get().equalsIgnoreCase("full")) {
+            return false;
+        }
+
+        if (view.get().equalsIgnoreCase("summary")) {
+            return true;
+        }
+
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "view not supported, only full and summary");
+    }
+
+    // the best matches of a SEARCH, a relevance ranking has no stable keyset so there is only this one page
+    private ListingPageDto<ListingGetDto> getRankedListings(ListingQuery listingQuery, int limit, boolean hasCursor) {
+        String search = listingQuery.search()
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "SORT=RELEVANCE requires SEARCH"));
+
+        if (hasCursor) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "SORT=RELEVANCE does not support cursor");
+        }
+
+        // the search index ranks the listings itself, the other index matches only restrict the ranking
+        Predicate<UUID> accept = listingQuery.indexMatches(listingService)
+                .<Predicate<UUID>>map(matches -> matches::contains)
+                .orElse(id -> true);
+
+        List<Listing> listings = listingService.rankListings(search, listingQuery.databaseSpecification(), accept,
+                limit);
+
+        List<ListingGetDto> page = listings.stream()
+                .map(ListingMapper.INSTANCE::listingToListingGetDto)
+                .collect(toList());
+
+        return new ListingPageDto<>(page, null);
+    }
+
+    private ListingQuery createListingQuery(
+            Optional<Integer> minRent,
+            Optional<Integer> maxRent,
+            Optional<List<String>> availableTo,
+            Optional<List<String>> listingType,
+            Optional<String> city,
+            Optional<String> zipCode,
+            Optional<Integer> minSqm,
+            Optional<Integer> maxSqm,
+            Optional<String> available,
+            Optional<String> sort,
+            Optional<String> order,
+            Optional<String> search,
+            Optional<Double> nearLat,
+            Optional<Double> nearLon,
+            Optional<Double> radiusKm
     ) {
         HashMap<String, Object> filtersMap = new HashMap<String, Object>();
-        List<Listing> allListings = listingService.getListings();
 
         // check if values are filled
         if (minRent.isPresent()) {
@@ -103,25 +312,36 @@ public class ListingController {
                 .replace("ö", "oe")
                 .replace("ü", "ue"));
 
+        // a radius search needs all three values
+        if (nearLat.isPresent() || nearLon.isPresent() || radiusKm.isPresent()) {
+            if (nearLat.isEmpty() || nearLon.isEmpty() || radiusKm.isEmpty()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "NEAR_LAT, NEAR_LON and RADIUS_KM have to be used together");
+            }
 
-        if (filtersMap.size() > 0) {
-            List<FilterPair> filterPairs = filtersMap.entrySet().stream()
-                    .map(e -> new FilterPair(ListingFilters.getFilter(e.getKey()), e.getValue())).toList();
+            if (Math.abs(nearLat.get()) > 90 || Math.abs(nearLon.get()) > 180 || radiusKm.get() <= 0) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid NEAR_LAT, NEAR_LON or RADIUS_KM");
+            }
 
-            allListings = ListingFilter.createFilter(allListings).filter(filterPairs).getListingsFiltered();
+            filtersMap.put("NEAR_LAT", nearLat.get());
+            filtersMap.put("NEAR_LON", nearLon.get());
+            filtersMap.put("RADIUS_KM", radiusKm.get());
         }
 
+        List<FilterPair> filterPairs = filtersMap.entrySet().stream()
+                .map(e -> new FilterPair(ListingFilters.getFilter(e.getKey()), e.getValue())).toList();
+
+        Sorting sorting = null;
+        OrderType orderType = OrderType.ASC;
+
         if (sort.isPresent()) {
 
-            Sorting sorting;
             try {
                 sorting = Sorting.valueOf(sort.get().toUpperCase());
             } catch (IllegalArgumentException e) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Sorting not supported");
             }
 
-            OrderType orderType = OrderType.ASC;
-
             if (order.isPresent()) {
                 try {
                     orderType = OrderType.valueOf(order.get().toUpperCase());
@@ -129,40 +349,48 @@ public class ListingController {
                     throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "OrderType not found, only ASC and DESC supported");
                 }
             }
+        }
 
-            // set default ordering to ASC (Ordering only applies to RENT and SQM)
-            if (orderType.equals(OrderType.ASC)) {
-                if (sorting.equals(Sorting.RENT)) {
-                    allListings.sort(Comparator.comparing(Listing::getRent));
-                } else if (sorting.equals(Sorting.SQM)) {
-                    allListings.sort(Comparator.comparing(Listing::getSqm));
-                } else {
-                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Operation not valid");
-                }
-            }
+        return new ListingQuery(filterPairs, sorting, orderType);
+    }
 
-            if (orderType.equals(OrderType.DESC)) {
-                if (sorting.equals(Sorting.RENT)) {
-                    allListings.sort(Comparator.comparing(Listing::getRent, (listing1, listing2) -> {
-                        return listing2.compareTo(listing1);
-                    }));
-                    Collections.sort(allListings, Comparator.comparing(Listing::getRent, (listing1, listing2) -> {
-                        return listing2.compareTo(listing1);
-                    }));
-                } else if (sorting.equals(Sorting.SQM)) {
-                    allListings.sort(Comparator.comparing(Listing::getSqm, (listing1, listing2) -> {
-                        return listing2.compareTo(listing1);
-                    }));
-                    Collections.sort(allListings, Comparator.comparing(Listing::getSqm, (listing1, listing2) -> {
-                        return listing2.compareTo(listing1);
-                    }));
-                } else {
-                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Operation not valid");
-                }
-            }
+    // listings closest to one of the special addresses (e.g. university) of a user, closest first
+    @GetMapping("/users/{id}/specialaddress/{specialaddressID}/listings")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public List<ListingGetDto> getListingsNearSpecialAddress(
+            @AuthenticationPrincipal String authUserId,
+            @PathVariable UUID id,
+            @PathVariable UUID specialaddressID,
+            @RequestParam(name = "limit", defaultValue = "20") int limit
+    ) {
+        userService.findUserID(UUID.fromString(authUserId))
+                .orElseThrow(() -> {
+                    log.debug("user (authenticated user) with id {} not found while getting listings near special address",
+                            authUserId);
+                    return new ResponseStatusException(HttpStatus.FORBIDDEN, "error finding authenticated user");
+                });
+
+        if (limit < 1 || limit > maxPageSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + maxPageSize);
         }
 
-        return allListings.stream()
+        if (userService.findUserID(id).isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "user with id " + id + " not found");
+        }
+
+        Optional<Location> specialAddress = userService.getUsersSpecialAddressById(id, specialaddressID);
+
+        if (specialAddress == null || specialAddress.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "special address with id " + specialaddressID + " not found");
+        }
+
+        GeoPoint center = listingService.locate(specialAddress.get())
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                        "special address with id " + specialaddressID + " could not be located"));
+
+        return listingService.findNearestListings(center, limit).stream()
                 .map(ListingMapper.INSTANCE::listingToListingGetDto)
                 .collect(toList());
     }
@@ -230,12 +458,11 @@ public class ListingController {
     @DeleteMapping("/listings/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public void deleteListing(@PathVariable UUID id) {
-        if (!listingService.existsListing(id)) {
-            log.debug("listing with id {} not found while deleting listing", id);
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "listing with id " + id + " not found");
-        }
-
-        Listing listingToBeDeleted = listingService.findListingById(id).get();
+        Listing listingToBeDeleted = listingService.findListingById(id)
+                .orElseThrow(() -> {
+                    log.debug("listing with id {} not found while deleting listing", id);
+                    return new ResponseStatusException(HttpStatus.NOT_FOUND, "listing with id " + id + " not found");
+                });
 
         // merge lists of pictures and list of floorplans into one and delete pictures first before listing GETS DELETED
         pictureService.deleteAll(
@@ -425,8 +652,78 @@ public class ListingController {
     }
 
     public enum Sorting {
-        RENT,
-        SQM
+        RENT("rent", Listing::getRent, ListingSummaryDto::getRent),
+        SQM("sqm", Listing::getSqm, ListingSummaryDto::getSqm);
+
+        private final String property;
+        private final Function<Listing, Double> value;
+        private final Function<ListingSummaryDto, Double> summaryValue;
+
+        Sorting(String property, Function<Listing, Double> value, Function<ListingSummaryDto, Double> summaryValue) {
+            this.property = property;
+            this.value = value;
+            this.summaryValue = summaryValue;
+        }
+
+        public String getProperty() {
+            return property;
+        }
+
+        public Double valueOf(Listing listing) {
+            return value.apply(listing);
+        }
+
+        public Double valueOf(ListingSummaryDto listing) {
+            return summaryValue.apply(listing);
+        }
+    }
+
+    /**
+     * parsed filters and ordering of a listing request
+     *
+     * @param filters   requested filters
+     * @param sorting   requested sorting, null if the listings are only ordered by id
+     * @param orderType direction of the sorting
+     */
+    private record ListingQuery(List<FilterPair> filters, @Nullable Sorting sorting, OrderType orderType) {
+
+        public Specification<Listing> specification(ListingService listingService) {
+            return ListingFilter.toSpecification(filters, listingService::searchListingIds,
+                    listingService::nearListingIds);
+        }
+
+        public Specification<Listing> databaseSpecification() {
+            return ListingFilter.toDatabaseSpecification(filters);
+        }
+
+        public Optional<Set<UUID>> indexMatches(ListingService listingService) {
+            return ListingFilter.indexMatches(filters, listingService::searchListingIds,
+                    listingService::nearListingIds);
+        }
+
+        public Optional<String> search() {
+            return filters.stream()
+                    .filter(f -> f.getFilter() == ListingFilters.SEARCH)
+                    .map(FilterPair::getStringValue)
+                    .findFirst();
+        }
+
+        public @Nullable String sortProperty() {
+            return sorting != null ? sorting.getProperty() : null;
+        }
+
+        // Ordering only applies to RENT and SQM, the id keeps the order stable for equal values
+        public Sort.Direction direction() {
+            return orderType.equals(OrderType.DESC) ? Sort.Direction.DESC : Sort.Direction.ASC;
+        }
+
+        public String cursorAfter(@Nullable Double value, UUID id) {
+            return new ListingCursor(sortProperty(), direction(), value, id).encode();
+        }
+
+        public Sort sort() {
+            return ListingCursor.sort(sortProperty(), direction());
+        }
     }
 
     // filter listings
@@ -447,6 +744,88 @@ public class ListingController {
             return listings;
         }
 
+        /**
+         * translates the filters into a single database query, so that they are applied before a page is cut off.
+         * The query matches the same listings as {@link #filter(List)}.
+         *
+         * @param filters requested filters
+         * @param search  looks up the ids of the listings matching a SEARCH query
+         * @param near    looks up the ids of the listings within a radius (in km) around a point
+         * @return specification matching all filters
+         */
+        public static Specification<Listing> toSpecification(List<FilterPair> filters,
+                                                             Function<String, Set<UUID>> search,
+                                                             BiFunction<GeoPoint, Double, Set<UUID>> near) {
+            Specification<Listing> specification = toDatabaseSpecification(filters);
+
+            return indexMatches(filters, search, near)
+                    .map(ids -> specification.and(ListingSpecifications.idIn(ids)))
+                    .orElse(specification);
+        }
+
+        /**
+         * like {@link #toSpecification(List, Function, BiFunction)}, but without the filters answered by an index
+         * (SEARCH and the radius search), see {@link #indexMatches(List, Function, BiFunction)}
+         *
+         * @param filters requested filters
+         * @return specification matching all filters which are not answered by an index
+         */
+        public static Specification<Listing> toDatabaseSpecification(List<FilterPair> filters) {
+            Specification<Listing> specification = Specification.where(null);
+
+            for (FilterPair f : filters) {
+                specification = switch (f.getFilter()) {
+                    case MIN_RENT -> specification.and(ListingSpecifications.rentAtLeast(f.getIntegerValue()));
+                    case MAX_RENT -> specification.and(ListingSpecifications.rentAtMost(f.getIntegerValue()));
+                    case AVAILABLE_TO -> specification.and(ListingSpecifications.availableToAll(f.getAvailableToValue()));
+                    case LISTING_TYPE -> specification.and(ListingSpecifications.listingTypeIn(f.getListingTypeValue()));
+                    case CITY -> specification.and(ListingSpecifications.cityEquals(f.getStringValue()));
+                    case ZIP_CODE -> specification.and(ListingSpecifications.zipCodeEquals(f.getStringValue()));
+                    case MIN_SQM -> specification.and(ListingSpecifications.sqmAtLeast(f.getIntegerValue()));
+                    case MAX_SQM -> specification.and(ListingSpecifications.sqmAtMost(f.getIntegerValue()));
+                    case AVAILABLE -> specification.and(ListingSpecifications.publishedEquals(f.getBooleanValue()));
+                    // answered by an index
+                    case SEARCH, NEAR_LAT, NEAR_LON, RADIUS_KM -> specification;
+                };
+            }
+
+            return specification;
+        }
+
+        /**
+         * looks up the listings matching the filters which are answered by an index
+         *
+         * @param filters requested filters
+         * @param search  looks up the ids of the listings matching a SEARCH query
+         * @param near    looks up the ids of the listings within a radius (in km) around a point
+         * @return ids of the listings matching all of these filters, empty if none of them is requested
+         */
+        public static Optional<Set<UUID>> indexMatches(List<FilterPair> filters,
+                                                       Function<String, Set<UUID>> search,
+                                                       BiFunction<GeoPoint, Double, Set<UUID>> near) {
+            Set<UUID> matches = null;
+
+            for (FilterPair f : filters) {
+                Set<UUID> ids = switch (f.getFilter()) {
+                    case SEARCH -> search.apply(f.getStringValue());
+                    case NEAR_LAT -> near.apply(nearPoint(filters), doubleValue(filters, ListingFilters.RADIUS_KM));
+                    default -> null;
+                };
+
+                if (ids == null) {
+                    continue;
+                }
+
+                if (matches == null) {
+                    matches = new HashSet<>(ids);
+                } else {
+                    matches.retainAll(ids);
+                }
+            }
+
+            return Optional.ofNullable(matches);
+        }
+
         public ListingFilter filter(List<FilterPair> filters) {
             for (FilterPair f : filters) {
                 switch (f.getFilter()) {
@@ -460,6 +839,10 @@ public class ListingController {
                     case MAX_SQM -> filterByMaxSqm(f.getIntegerValue());
                     case AVAILABLE -> filterByAvailable(f.getBooleanValue());
                     case SEARCH -> filterBySearchQuery(f.getStringValue());
+                    case NEAR_LAT -> filterByDistance(nearPoint(filters), doubleValue(filters, ListingFilters.RADIUS_KM));
+                    case NEAR_LON, RADIUS_KM -> {
+                        // part of NEAR_LAT
+                    }
                 }
             }
 
@@ -529,41 +912,32 @@ public class ListingController {
             return this;
         }
 
+        public ListingFilter filterByDistance(GeoPoint center, double radiusKm) {
+            this.listings = listings.stream()
+                    .filter(listing -> listing.getAddress() != null && listing.getAddress().hasCoordinates())
+                    .filter(listing -> center.distanceKm(new GeoPoint(listing.getAddress().getLatitude(),
+                            listing.getAddress().getLongitude())) <= radiusKm)
+                    .collect(toList());
+            return this;
+        }
+
+        private static GeoPoint nearPoint(List<FilterPair> filters) {
+            return new GeoPoint(doubleValue(filters, ListingFilters.NEAR_LAT), doubleValue(filters, ListingFilters.NEAR_LON));
+        }
+
+        private static double doubleValue(List<FilterPair> filters, ListingFilters filter) {
+            return filters.stream()
+                    .filter(f -> f.getFilter() == filter)
+                    .map(FilterPair::getDoubleValue)
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException(filter + " is missing"));
+        }
+
         public ListingFilter filterBySearchQuery(String search) {
-            StringBuilder newSearch = new StringBuilder(search);
-
-            for (String s : search.split(" ")) {
-                newSearch.append(" ");
-                newSearch.append(s
-                        .replace("ae", "ä")
-                        .replace("ue", "ü")
-                        .replace("oe", "ö"));;
-                newSearch.append(" ");
-                newSearch.append(s
-                        .replace("ä", "ae")
-                        .replace("ü", "ue")
-                        .replace("ö", "oe"));
-                newSearch.append(" ");
-                newSearch.append(s
-                        .replace("ä", "a")
-                        .replace("ü", "u")
-                        .replace("ö", "o"));
-            }
+            Set<String> searchTokens = ListingSearchIndex.expandQuery(search);
 
             this.listings = listings.stream()
-                    .filter(listing -> !Collections.disjoint(
-                            Arrays.stream(listing.getDescription().toLowerCase().split(" ")).toList(),
-                            Arrays.stream(newSearch.toString().split(" ")).toList()) ||
-                            !Collections.disjoint(
-                            Arrays.stream(listing.getTitle().toLowerCase().split(" ")).toList(),
-                            Arrays.stream(newSearch.toString().split(" ")).toList()) ||
-                            !Collections.disjoint(
-                            Arrays.stream(listing.getAddress().getCity().toLowerCase().split(" ")).toList(),
-                            Arrays.stream(newSearch.toString().split(" ")).toList()) ||
-                            !Collections.disjoint(
-                            Arrays.stream(listing.getAddress().getZipCode().toLowerCase().split(" ")).toList(),
-                            Arrays.stream(newSearch.toString().split(" ")).toList())
-                    )
+                    .filter(listing -> !Collections.disjoint(ListingSearchIndex.tokenize(listing), searchTokens))
                     .collect(toList());
             return this;
         }
@@ -575,12 +949,17 @@ public class ListingController {
             MAX_RENT(Integer.class),
             AVAILABLE_TO(ArrayList.class),
             LISTING_TYPE(ArrayList.class),
+            // case is ignored, independent of the collation of the database
             CITY(String.class),
             ZIP_CODE(String.class),
             MIN_SQM(Integer.class),
             MAX_SQM(Integer.class),
             AVAILABLE(Boolean.class),
-            SEARCH(String.class);
+            SEARCH(String.class),
+            // radius search, only used together
+            NEAR_LAT(Double.class),
+            NEAR_LON(Double.class),
+            RADIUS_KM(Double.class);
 
             private final Class<?> type;
 
@@ -1,5 +1,7 @@
 package ch.uzh.ifi.fs22.sel.group15.cozycave.server.controller;
 
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.PictureState;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.PictureVariant;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.Role;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.Picture;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.listings.Listing;
@@ -10,14 +12,26 @@ import ch.uzh.ifi.fs22.sel.group15.cozycave.server.service.ApplicationService;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.service.ListingService;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.service.PictureService;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.service.UserService;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage.PictureContentCache;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -31,13 +45,16 @@ public class PictureController {
     private final UserService userService;
     private final ApplicationService applicationService;
     private final ListingService listingService;
+    private final CacheControl contentCacheControl;
 
     PictureController(PictureService pictureService, UserService userService,
-                      ApplicationService applicationService, ListingService listingService) {
+                      ApplicationService applicationService, ListingService listingService,
+                      @Value("${cozycave.pictures.content.max_age_seconds:86400}") long contentMaxAgeSeconds) {
         this.pictureService = pictureService;
         this.userService = userService;
         this.applicationService = applicationService;
         this.listingService = listingService;
+        this.contentCacheControl = CacheControl.maxAge(Duration.ofSeconds(contentMaxAgeSeconds)).cachePublic();
     }
 
     // get specific picture
@@ -79,10 +96,12 @@ public class PictureController {
     public void deletePicture(
             @AuthenticationPrincipal String authUserId,
             @PathVariable UUID pictureId) {
-        if (!pictureService.existsPicture(pictureId)) {
-            log.debug("picture with id {} not found while deleting picture", pictureId);
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "picture with id " + pictureId + " not found");
-        }
+        Picture picture = pictureService.findPictureById(pictureId)
+                .orElseThrow(() -> {
+                    log.debug("picture with id {} not found while deleting picture", pictureId);
+                    return new ResponseStatusException(HttpStatus.NOT_FOUND,
+                            "picture with id " + pictureId + " not found");
+                });
 
         User authUser = userService.findUserID(UUID.fromString(authUserId))
                 .orElseThrow(() -> {
@@ -90,7 +109,7 @@ public class PictureController {
                     return new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
                             "error finding authenticated user");
                 });
-        if (authUser.getId() != pictureService.findPictureById(pictureId).get().getUploader().getId()) {
+        if (authUser.getId() != picture.getUploader().getId()) {
             log.error("picture with id {} has a different uploader than {}", pictureId, authUserId);
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Uploader of picture and logged in user are not the same");
         }
@@ -112,13 +131,66 @@ public class PictureController {
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
     public String getPictureView(@PathVariable UUID pictureId) {
-        if (!pictureService.existsPicture(pictureId)) {
-            log.debug("picture with id {} not found while deleting picture", pictureId);
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "picture with id " + pictureId + " picture found");
+        return pictureService.findPictureById(pictureId)
+                .map(Picture::getPictureUrl)
+                .orElseThrow(() -> {
+                    log.debug("picture with id {} not found while getting picture url", pictureId);
+                    return new ResponseStatusException(HttpStatus.NOT_FOUND,
+                            "picture with id " + pictureId + " not found");
+                });
+    }
+
+    // stream the picture or one of its variants (thumbnail, medium, large), with range and conditional requests
+    @GetMapping("/pictures/{pictureId}/content")
+    public ResponseEntity<Resource> getPictureContent(
+            @PathVariable UUID pictureId,
+            @RequestParam(required = false) String variant) {
+        Picture picture = pictureService.findPictureById(pictureId)
+                .orElseThrow(() -> {
+                    log.debug("picture with id {} not found while getting picture content", pictureId);
+                    return new ResponseStatusException(HttpStatus.NOT_FOUND,
+                            "picture with id " + pictureId + " not found");
+                });
+
+        if (picture.getState() != PictureState.READY) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "picture with id " + pictureId + " is not stored");
+        }
+
+        // a variant which is missing (e.g. the picture is smaller) falls back to the original
+        String url = Optional.ofNullable(variant)
+                .map(name -> picture.getVariantUrl(parseVariant(name)))
+                .orElse(picture.getPictureUrl());
+
+        Optional<PictureContentCache.Content> content = pictureService.getPictureFile(url);
+
+        if (content.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.FOUND).location(URI.create(url)).build();
+        }
+
+        // the cached file is not evicted before the response has been written
+        RequestContextHolder.currentRequestAttributes().registerDestructionCallback(
+                PictureContentCache.Content.class.getName(), content.get()::close, RequestAttributes.SCOPE_REQUEST);
+
+        Path file = content.get().path();
+
+        // the stored files never change, their name is a strong validator; Range requests are handled by Spring
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .cacheControl(contentCacheControl)
+                .eTag(file.getFileName().toString());
+
+        if (picture.getCreationDate() != null) {
+            response.lastModified(picture.getCreationDate().getTime());
+        }
+
+        return response.body(new FileSystemResource(file));
+    }
+
+    private static PictureVariant parseVariant(String name) {
+        try {
+            return PictureVariant.valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "unknown picture variant " + name);
         }
-        Optional<Picture> picture = pictureService.findPictureById(pictureId);
-        String url = picture.get().getPictureUrl();
-        return url;
     }
 
     // get profile picture of a user in a list
@@ -138,9 +210,9 @@ public class PictureController {
                 .collect(Collectors.toList());
     }
 
-    // create pictures for users
+    // create pictures for users, the picture stays PENDING until the file is uploaded to the storage server
     @PostMapping("/pictures/users")
-    @ResponseStatus(HttpStatus.CREATED)
+    @ResponseStatus(HttpStatus.ACCEPTED)
     @ResponseBody
     public PictureGetDto uploadUserPicture(
             @AuthenticationPrincipal String authUserId,
@@ -186,7 +258,7 @@ public class PictureController {
 
     // create pictures for listing
     @PostMapping("/pictures/listings/{listingId}")
-    @ResponseStatus(HttpStatus.CREATED)
+    @ResponseStatus(HttpStatus.ACCEPTED)
     @ResponseBody
     public PictureGetDto uploadListingPicture(
             @AuthenticationPrincipal String authUserId,
@@ -243,7 +315,7 @@ public class PictureController {
     }
 
     @PostMapping("/pictures/listings/{listingId}/floorplan")
-    @ResponseStatus(HttpStatus.CREATED)
+    @ResponseStatus(HttpStatus.ACCEPTED)
     @ResponseBody
     public PictureGetDto uploadListingFloorplanPicture(
             @AuthenticationPrincipal String authUserId,
@@ -0,0 +1,171 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.controller;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.Picture;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.ResumableUpload;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.listings.Listing;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.User;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.dto.PictureGetDto;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.mapper.PictureMapper;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.service.ListingService;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.service.PictureService;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.service.ResumableUploadService;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.service.UserService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.util.UUID;
+
+/**
+ * resumable uploads of floorplans, for files too large to upload reliably in one request:
+ * <ol>
+ *     <li>{@code POST /v1/pictures/listings/{listingId}/floorplan/uploads?filename=...} with {@code Upload-Length}
+ *     creates the upload, its URL is in {@code Location}</li>
+ *     <li>{@code PATCH} on the upload with {@code Upload-Offset} appends a chunk; {@code HEAD} returns the offset to
+ *     continue from after an interruption</li>
+ *     <li>{@code POST} on {@code .../complete} turns the complete file into a floorplan picture</li>
+ * </ol>
+ * No request thread is held between the chunks.
+ */
+@RestController
+@RequestMapping(value = "/v1")
+@Slf4j
+public class PictureUploadController {
+
+    static final String UPLOAD_LENGTH = "Upload-Length";
+    static final String UPLOAD_OFFSET = "Upload-Offset";
+
+    private final ResumableUploadService resumableUploadService;
+    private final PictureService pictureService;
+    private final UserService userService;
+    private final ListingService listingService;
+
+    PictureUploadController(ResumableUploadService resumableUploadService, PictureService pictureService,
+                            UserService userService, ListingService listingService) {
+        this.resumableUploadService = resumableUploadService;
+        this.pictureService = pictureService;
+        this.userService = userService;
+        this.listingService = listingService;
+    }
+
+    @PostMapping("/pictures/listings/{listingId}/floorplan/uploads")
+    public ResponseEntity<Void> createFloorplanUpload(
+            @AuthenticationPrincipal String authUserId,
+            @PathVariable UUID listingId,
+            @RequestParam String filename,
+            @RequestHeader(UPLOAD_LENGTH) long length) {
+        User authUser = findAuthUser(authUserId);
+        Listing listing = findListing(listingId);
+        checkPublisher(authUser, listing);
+
+        ResumableUpload upload = resumableUploadService.create(authUser, listing, filename, length);
+
+        return ResponseEntity.created(URI.create("/v1/pictures/uploads/" + upload.getId()))
+                .header(UPLOAD_OFFSET, String.valueOf(upload.getOffset()))
+                .header(UPLOAD_LENGTH, String.valueOf(upload.getLength()))
+                .build();
+    }
+
+    @RequestMapping(value = "/pictures/uploads/{uploadId}", method = RequestMethod.HEAD)
+    public ResponseEntity<Void> getUploadOffset(
+            @AuthenticationPrincipal String authUserId,
+            @PathVariable UUID uploadId) {
+        ResumableUpload upload = findOwnUpload(authUserId, uploadId);
+
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .header(UPLOAD_OFFSET, String.valueOf(upload.getOffset()))
+                .header(UPLOAD_LENGTH, String.valueOf(upload.getLength()))
+                .build();
+    }
+
+    @PatchMapping("/pictures/uploads/{uploadId}")
+    public ResponseEntity<Void> appendChunk(
+            @AuthenticationPrincipal String authUserId,
+            @PathVariable UUID uploadId,
+            @RequestHeader(UPLOAD_OFFSET) long offset,
+            InputStream chunk) {
+        ResumableUpload upload = findOwnUpload(authUserId, uploadId);
+
+        long newOffset = resumableUploadService.append(upload, offset, chunk);
+
+        return ResponseEntity.noContent()
+                .header(UPLOAD_OFFSET, String.valueOf(newOffset))
+                .build();
+    }
+
+    @PostMapping("/pictures/uploads/{uploadId}/complete")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @ResponseBody
+    public PictureGetDto completeUpload(
+            @AuthenticationPrincipal String authUserId,
+            @PathVariable UUID uploadId) {
+        User authUser = findAuthUser(authUserId);
+        ResumableUpload upload = findOwnUpload(authUserId, uploadId);
+        Listing listing = findListing(upload.getListingId());
+        // the listing may have been handed over while the chunks were uploaded
+        checkPublisher(authUser, listing);
+
+        Picture pictureInput = new Picture();
+        pictureInput.setUploader(authUser);
+
+        Picture uploadedPicture = pictureService.uploadListingFloorplanPicture(pictureInput,
+                resumableUploadService.completedFile(upload), resumableUploadService.completedHash(upload),
+                upload.getFilename(), listing);
+
+        resumableUploadService.delete(upload);
+
+        return PictureMapper.INSTANCE.pictureToPictureGetDto(uploadedPicture);
+    }
+
+    @DeleteMapping("/pictures/uploads/{uploadId}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void deleteUpload(
+            @AuthenticationPrincipal String authUserId,
+            @PathVariable UUID uploadId) {
+        resumableUploadService.delete(findOwnUpload(authUserId, uploadId));
+    }
+
+    private ResumableUpload findOwnUpload(String authUserId, UUID uploadId) {
+        ResumableUpload upload = resumableUploadService.findUpload(uploadId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "upload with id " + uploadId + " not found"));
+
+        if (!upload.getUploaderId().equals(UUID.fromString(authUserId))) {
+            log.error("upload with id {} has a different uploader than {}", uploadId, authUserId);
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Uploader of upload and logged in user are not the same");
+        }
+
+        return upload;
+    }
+
+    private void checkPublisher(User authUser, Listing listing) {
+        if (!authUser.getId().equals(listing.getPublisher().getId())) {
+            log.error("Listing with id {} has a different publisher {} than {}", listing.getId(), listing.getPublisher().getId(), authUser.getId());
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Publisher of listing and logged in user are not the same");
+        }
+    }
+
+    private User findAuthUser(String authUserId) {
+        return userService.findUserID(UUID.fromString(authUserId))
+                .orElseThrow(() -> {
+                    log.error("user (authenticated user) with id {} not found while uploading picture", authUserId);
+                    return new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
+                            "error finding authenticated user");
+                });
+    }
+
+    private Listing findListing(UUID listingId) {
+        return listingService.findListingById(listingId)
+                .orElseThrow(() -> {
+                    log.debug("listing with id {} not found while uploading picture", listingId);
+                    return new ResponseStatusException(HttpStatus.NOT_FOUND, "listing with id " + listingId + " not found");
+                });
+    }
+}
@@ -133,7 +133,7 @@ public class UserController {
         Optional<User> user = userService.findUserID(id);
 
         if (user.isPresent() && user.get().getDetails().getPicture() != null) {
-            pictureService.deletePictureFromStorageServer(userService.findUserID(id).get().getDetails().getPicture().getPictureUrl());
+            pictureService.deletePictureFilesFromStorageServer(userService.findUserID(id).get().getDetails().getPicture());
         }
 
         userService.deleteUser(id);
@@ -1,12 +1,15 @@
 package ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity;
 
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.geo.GeoPoint;
 import java.util.Objects;
 import java.util.UUID;
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.PrePersist;
 import javax.persistence.Table;
 import lombok.AllArgsConstructor;
@@ -16,12 +19,19 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
 import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Type;
 import org.springframework.data.annotation.Transient;
 import org.springframework.util.StringUtils;
 
 @Entity
-@Table(name = "location")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(name = "location", indexes = {
+        @Index(name = "idx_location_city", columnList = "city"),
+        @Index(name = "idx_location_zip_code", columnList = "zip_code")
+})
 @AllArgsConstructor
 @Getter
 @Setter
@@ -63,6 +73,40 @@ public class Location implements Cloneable {
     @Column(name = "country", nullable = false)
     private String country;
 
+    // filled by a Geocoder if not given, null if the address could not be located
+    @Column(name = "latitude")
+    private Double latitude;
+
+    @Column(name = "longitude")
+    private Double longitude;
+
+    public Location(UUID id, String name, String description, String street, String houseNumber,
+                    String apartmentNumber, String zipCode, String city, String state, String country) {
+        this(id, name, description, street, houseNumber, apartmentNumber, zipCode, city, state, country, null, null);
+    }
+
+    // coordinates out of range are treated as missing, so that they are located again
+    @Transient
+    public boolean hasCoordinates() {
+        return latitude != null && longitude != null && GeoPoint.isValid(latitude, longitude);
+    }
+
+    // no coordinates at all are valid as well, they are filled by a Geocoder
+    @Transient
+    public boolean hasValidCoordinates() {
+        return (latitude == null && longitude == null) || hasCoordinates();
+    }
+
+    // same address, the coordinates are not compared
+    @Transient
+    public boolean hasSameAddress(Location other) {
+        return Objects.equals(street, other.street)
+                && Objects.equals(houseNumber, other.houseNumber)
+                && Objects.equals(zipCode, other.zipCode)
+                && Objects.equals(city, other.city)
+                && Objects.equals(country, other.country);
+    }
+
     // TODO: check if address exists in real world
     @Transient
     public boolean isValid() {
@@ -84,7 +128,9 @@ public class Location implements Cloneable {
                 this.zipCode,
                 this.city,
                 this.state,
-                this.country
+                this.country,
+                this.latitude,
+                this.longitude
         );
     }
 
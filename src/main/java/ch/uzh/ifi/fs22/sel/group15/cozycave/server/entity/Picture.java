@@ -1,15 +1,23 @@
 package ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity;
 
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.PictureState;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.PictureVariant;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.User;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.PrePersist;
@@ -22,10 +30,16 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Type;
 
 @Entity
-@Table(name = "pictures")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(name = "pictures", indexes = {
+        @Index(name = "idx_pictures_picture_url", columnList = "picture_url")
+})
 @AllArgsConstructor
 @Getter
 @Setter
@@ -33,7 +47,6 @@ import org.hibernate.annotations.Type;
 @Builder
 public class Picture {
 
-    public static final String ROOT_PATH = "https://pics.cozycave.ch/";
     public static final String GRAVATAR_PATH = "https://www.gravatar.com/avatar/";
 
     @Id
@@ -53,12 +66,75 @@ public class Picture {
     @Column(name = "picture_url", nullable = false)
     private String pictureUrl;
 
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state")
+    private PictureState state;
+
+    // downscaled copies, null until they are stored or if the picture is smaller than the variant
+    @Column(name = "thumbnail_url")
+    private String thumbnailUrl;
+
+    @Column(name = "medium_url")
+    private String mediumUrl;
+
+    @Column(name = "large_url")
+    private String largeUrl;
+
+    public Picture(UUID id, Date creationDate, User uploader, String pictureUrl) {
+        this(id, creationDate, uploader, pictureUrl, PictureState.READY);
+    }
+
+    public Picture(UUID id, Date creationDate, User uploader, String pictureUrl, PictureState state) {
+        this(id, creationDate, uploader, pictureUrl, state, null, null, null);
+    }
+
+    // pictures uploaded before the states were introduced have no state
+    public PictureState getState() {
+        return state != null ? state : PictureState.READY;
+    }
+
+    public String getVariantUrl(PictureVariant variant) {
+        return switch (variant) {
+            case THUMBNAIL -> thumbnailUrl;
+            case MEDIUM -> mediumUrl;
+            case LARGE -> largeUrl;
+        };
+    }
+
+    public void setVariantUrl(PictureVariant variant, String url) {
+        switch (variant) {
+            case THUMBNAIL -> this.thumbnailUrl = url;
+            case MEDIUM -> this.mediumUrl = url;
+            case LARGE -> this.largeUrl = url;
+        }
+    }
+
+    /**
+     * @return URLs of the original and of all stored variants
+     */
+    public List<String> getStoredUrls() {
+        List<String> urls = new ArrayList<>();
+        urls.add(pictureUrl);
+
+        for (String variantUrl : new String[]{thumbnailUrl, mediumUrl, largeUrl}) {
+            if (variantUrl != null) {
+                urls.add(variantUrl);
+            }
+        }
+
+        return urls;
+    }
+
     public Picture clone() {
         return new Picture(
                 this.id,
                 this.creationDate,
                 this.uploader,
-                this.pictureUrl
+                this.pictureUrl,
+                this.state,
+                this.thumbnailUrl,
+                this.mediumUrl,
+                this.largeUrl
         );
     }
 
@@ -0,0 +1,54 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.PictureState;
+import java.util.Date;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * file on the storage server, addressed by the SHA-256 of its content. All pictures with the same content share one
+ * blob, it is only deleted from the storage server once the last of them is deleted.
+ */
+@Entity
+@Table(name = "picture_blobs")
+@AllArgsConstructor
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+@Builder
+public class PictureBlob {
+
+    // hex encoded SHA-256 of the file
+    @Id
+    @Column(name = "hash", length = 64, nullable = false, updatable = false)
+    private String hash;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "creation_date", updatable = false)
+    private Date creationDate;
+
+    // name of the file on the storage server
+    @Column(name = "filename", nullable = false, updatable = false, unique = true)
+    private String filename;
+
+    // number of pictures which use the file
+    @Column(name = "reference_count", nullable = false)
+    private int referenceCount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state", nullable = false)
+    private PictureState state;
+}
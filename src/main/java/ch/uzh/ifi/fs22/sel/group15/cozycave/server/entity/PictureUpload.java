@@ -0,0 +1,62 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity;
+
+import java.util.Date;
+import java.util.UUID;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.annotations.Type;
+
+/**
+ * upload of a picture file to the storage server which has not succeeded yet. The file waits in the spool directory
+ * until the upload is done, so pending uploads survive a restart of the server.
+ */
+@Entity
+@Table(name = "picture_uploads", indexes = {
+        @Index(name = "idx_picture_uploads_next_attempt", columnList = "next_attempt")
+})
+@AllArgsConstructor
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+@Builder
+public class PictureUpload {
+
+    // same id as the uploaded picture
+    @Id
+    @Type(type = "uuid-char")
+    @Column(name = "picture_id", nullable = false, updatable = false)
+    private UUID pictureId;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "creation_date", updatable = false)
+    private Date creationDate;
+
+    // name of the file on the storage server
+    @Column(name = "filename", nullable = false, updatable = false)
+    private String filename;
+
+    @Column(name = "spool_path", nullable = false, updatable = false)
+    private String spoolPath;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "next_attempt", nullable = false)
+    private Date nextAttempt;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+}
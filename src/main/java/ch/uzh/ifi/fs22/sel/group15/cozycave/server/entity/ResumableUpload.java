@@ -0,0 +1,63 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity;
+
+import java.util.Date;
+import java.util.UUID;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.annotations.Type;
+
+/**
+ * floorplan which is uploaded in chunks. The received bytes are appended to a file in the upload directory, the
+ * offset is the number of bytes which are safely stored, a client continues from there after an interruption.
+ */
+@Entity
+@Table(name = "resumable_uploads", indexes = {
+        @Index(name = "idx_resumable_uploads_creation_date", columnList = "creation_date")
+})
+@AllArgsConstructor
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+@Builder
+public class ResumableUpload {
+
+    @Id
+    @Type(type = "uuid-char")
+    @Column(name = "id", nullable = false, updatable = false)
+    private UUID id;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "creation_date", updatable = false)
+    private Date creationDate;
+
+    @Type(type = "uuid-char")
+    @Column(name = "uploader_id", nullable = false, updatable = false)
+    private UUID uploaderId;
+
+    @Type(type = "uuid-char")
+    @Column(name = "listing_id", nullable = false, updatable = false)
+    private UUID listingId;
+
+    // original name of the file, its extension is kept
+    @Column(name = "filename", nullable = false, updatable = false)
+    private String filename;
+
+    // total size in bytes announced by the client
+    @Column(name = "upload_length", nullable = false, updatable = false)
+    private long length;
+
+    @Column(name = "upload_offset", nullable = false)
+    private long offset;
+}
@@ -0,0 +1,68 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.StorageOperation;
+import java.util.Date;
+import java.util.UUID;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.annotations.Type;
+
+/**
+ * change on the storage server which is stored in the same transaction as the database change causing it and applied
+ * by the {@link ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage.StorageOutbox} after the commit
+ */
+@Entity
+@Table(name = "storage_outbox", indexes = {
+        @Index(name = "idx_storage_outbox_next_attempt", columnList = "next_attempt")
+})
+@AllArgsConstructor
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+@Builder
+public class StorageOutboxEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    @Type(type = "uuid-char")
+    @Column(name = "id", nullable = false, updatable = false)
+    private UUID id;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "creation_date", updatable = false)
+    private Date creationDate;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "operation", nullable = false, updatable = false)
+    private StorageOperation operation;
+
+    // name of the file on the storage server
+    @Column(name = "filename", nullable = false, updatable = false)
+    private String filename;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "next_attempt", nullable = false)
+    private Date nextAttempt;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+}
@@ -11,6 +11,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
 import javax.persistence.CollectionTable;
 import javax.persistence.Column;
@@ -21,8 +22,12 @@ import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.NamedAttributeNode;
+import javax.persistence.NamedEntityGraph;
+import javax.persistence.NamedSubgraph;
 import javax.persistence.OneToMany;
 import javax.persistence.OneToOne;
 import javax.persistence.Table;
@@ -35,11 +40,37 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
 import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Type;
 import org.springframework.util.StringUtils;
 
 @Entity
-@Table(name = "listings")
+@NamedEntityGraph(
+        name = Listing.GRAPH_LIST,
+        attributeNodes = {
+                @NamedAttributeNode("address"),
+                @NamedAttributeNode(value = "publisher", subgraph = "publisher")
+        },
+        subgraphs = {
+                @NamedSubgraph(name = "publisher", attributeNodes = {
+                        @NamedAttributeNode("authenticationData"),
+                        @NamedAttributeNode(value = "details", subgraph = "details")
+                }),
+                @NamedSubgraph(name = "details", attributeNodes = {
+                        @NamedAttributeNode("address"),
+                        @NamedAttributeNode("picture")
+                })
+        }
+)
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(name = "listings", indexes = {
+        @Index(name = "idx_listings_rent", columnList = "rent, id"),
+        @Index(name = "idx_listings_sqm", columnList = "sqm, id"),
+        @Index(name = "idx_listings_listing_type", columnList = "listing_type"),
+        @Index(name = "idx_listings_published", columnList = "published")
+})
 @AllArgsConstructor
 @Getter
 @Setter
@@ -48,6 +79,9 @@ import org.springframework.util.StringUtils;
 @Builder
 public class Listing implements Cloneable {
 
+    // single valued associations needed to render a listing, loaded with joins in the same query as the listings
+    public static final String GRAPH_LIST = "Listing.list";
+
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
     @Type(type = "uuid-char")
@@ -81,6 +115,7 @@ public class Listing implements Cloneable {
     private Boolean furnished;
 
     @ElementCollection(targetClass = Gender.class)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @Enumerated(EnumType.STRING)
     @CollectionTable(name = "listings_gender")
     @Column(name = "available_to")
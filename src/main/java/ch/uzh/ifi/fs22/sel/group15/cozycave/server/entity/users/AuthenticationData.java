@@ -43,12 +43,21 @@ public class AuthenticationData implements Cloneable {
     @Column(name = "salt", nullable = false, unique = true, updatable = false, length = 16)
     private String salt;
 
+    // incremented when the password is changed, but not when the same password is hashed again
+    @Column(name = "password_version", nullable = false, columnDefinition = "bigint default 0")
+    private long passwordVersion;
+
+    public AuthenticationData(UUID id, String email, String password, String salt) {
+        this(id, email, password, salt, 0);
+    }
+
     public AuthenticationData clone() {
         return new AuthenticationData(
                 this.id,
                 this.email,
                 this.password,
-                this.salt
+                this.salt,
+                this.passwordVersion
         );
     }
 
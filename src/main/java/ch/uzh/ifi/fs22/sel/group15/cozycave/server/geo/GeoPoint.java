@@ -0,0 +1,39 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.geo;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * WGS84 coordinates in degrees
+ */
+public record GeoPoint(double latitude, double longitude) {
+
+    public static final double EARTH_RADIUS_KM = 6371.0;
+
+    public GeoPoint {
+        if (!isValid(latitude, longitude)) {
+            throw new IllegalArgumentException("coordinates out of range: " + latitude + ", " + longitude);
+        }
+    }
+
+    // NaN is out of range as well
+    public static boolean isValid(double latitude, double longitude) {
+        return latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180;
+    }
+
+    /**
+     * great-circle distance (haversine formula)
+     *
+     * @param other second point
+     * @return distance in kilometers
+     */
+    public double distanceKm(@NotNull GeoPoint other) {
+        double dLat = Math.toRadians(other.latitude - latitude);
+        double dLon = Math.toRadians(other.longitude - longitude);
+
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(latitude)) * Math.cos(Math.toRadians(other.latitude))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
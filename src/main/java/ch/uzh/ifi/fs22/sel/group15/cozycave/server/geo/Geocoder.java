@@ -0,0 +1,35 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.geo;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.Location;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Optional;
+
+/**
+ * resolves the coordinates of an address. Implementations must not call remote services while a request is waiting,
+ * the default {@link ZipCodeGeocoder} only uses a local dataset.
+ */
+public interface Geocoder {
+
+    /**
+     * @param location address to locate
+     * @return coordinates of the address or empty if it is unknown
+     */
+    @NotNull Optional<GeoPoint> geocode(@NotNull Location location);
+
+    /**
+     * sets the coordinates of the location if they are missing and can be resolved
+     *
+     * @param location address to locate, may be null
+     */
+    default void locate(Location location) {
+        if (location == null || location.hasCoordinates()) {
+            return;
+        }
+
+        geocode(location).ifPresent(point -> {
+            location.setLatitude(point.latitude());
+            location.setLongitude(point.longitude());
+        });
+    }
+}
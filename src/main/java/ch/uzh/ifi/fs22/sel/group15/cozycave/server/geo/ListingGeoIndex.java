@@ -0,0 +1,264 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.geo;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.Location;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.listings.Listing;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.ListingRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * in-memory grid index over the coordinates of all listings. The world is split into cells of {@link #CELL_DEGREES}
+ * degrees, a radius or nearest neighbour query only looks at the cells around the requested point.
+ */
+@Component
+@Slf4j
+public class ListingGeoIndex {
+
+    // about 1.1 km in north-south direction, 0.75 km in east-west direction in Switzerland
+    static final double CELL_DEGREES = 0.01;
+    private static final double KM_PER_DEGREE = Math.PI * GeoPoint.EARTH_RADIUS_KM / 180;
+
+    private final ListingRepository listingRepository;
+    private final Geocoder geocoder;
+
+    private final Map<UUID, GeoPoint> points = new ConcurrentHashMap<>();
+    private final Map<Long, Set<UUID>> cells = new ConcurrentHashMap<>();
+
+    public ListingGeoIndex(ListingRepository listingRepository, Geocoder geocoder) {
+        this.listingRepository = listingRepository;
+        this.geocoder = geocoder;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        List<Listing> listings = listingRepository.findAll();
+
+        synchronized (this) {
+            points.clear();
+            cells.clear();
+            for (Listing listing : listings) {
+                try {
+                    index(listing);
+                } catch (RuntimeException e) {
+                    // one broken row must not prevent the start
+                    log.warn("could not index coordinates of listing {}", listing.getId(), e);
+                }
+            }
+        }
+
+        log.info("indexed coordinates of {} out of {} listings", points.size(), listings.size());
+    }
+
+    public synchronized void index(@Nullable Listing listing) {
+        if (listing == null || listing.getId() == null) {
+            return;
+        }
+
+        remove(listing.getId());
+
+        GeoPoint point = locate(listing.getAddress());
+
+        if (point == null) {
+            return;
+        }
+
+        points.put(listing.getId(), point);
+        cells.computeIfAbsent(cellOf(point), c -> ConcurrentHashMap.newKeySet()).add(listing.getId());
+    }
+
+    public synchronized void remove(@Nullable UUID id) {
+        if (id == null) {
+            return;
+        }
+
+        GeoPoint point = points.remove(id);
+
+        if (point == null) {
+            return;
+        }
+
+        cells.computeIfPresent(cellOf(point), (c, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    /**
+     * @param center   center of the circle
+     * @param radiusKm radius of the circle in kilometers
+     * @return ids of all listings within the circle
+     */
+    public @NotNull Set<UUID> withinRadius(@NotNull GeoPoint center, double radiusKm) {
+        Set<UUID> result = new HashSet<>();
+
+        double latDegrees = radiusKm / KM_PER_DEGREE;
+        double lonDegrees = radiusKm / (KM_PER_DEGREE * cosLatitude(center));
+
+        long minLat = cellCoordinate(Math.max(-90, center.latitude() - latDegrees));
+        long maxLat = cellCoordinate(Math.min(90, center.latitude() + latDegrees));
+        long minLon = cellCoordinate(Math.max(-180, center.longitude() - lonDegrees));
+        long maxLon = cellCoordinate(Math.min(180, center.longitude() + lonDegrees));
+
+        // for huge circles it is cheaper to check the occupied cells than to look up every cell of the bounding box
+        if ((maxLat - minLat + 1) * (maxLon - minLon + 1) > cells.size()) {
+            points.forEach((id, point) -> {
+                if (point.distanceKm(center) <= radiusKm) {
+                    result.add(id);
+                }
+            });
+            return result;
+        }
+
+        for (long lat = minLat; lat <= maxLat; lat++) {
+            for (long lon = minLon; lon <= maxLon; lon++) {
+                Set<UUID> ids = cells.get(cellKey(lat, lon));
+
+                if (ids == null) {
+                    continue;
+                }
+
+                for (UUID id : ids) {
+                    GeoPoint point = points.get(id);
+
+                    if (point != null && point.distanceKm(center) <= radiusKm) {
+                        result.add(id);
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * finds the listings closest to a point by searching rings of cells around it, until no unvisited cell can
+     * contain a closer listing than the k-th closest found so far
+     *
+     * @param center point to measure the distance from
+     * @param limit  maximal number of listings to return
+     * @param accept only listings accepted by this predicate are returned
+     * @return ids of the closest listings, closest first
+     */
+    public @NotNull List<UUID> nearest(@NotNull GeoPoint center, int limit, @NotNull Predicate<UUID> accept) {
+        if (limit < 1) {
+            return List.of();
+        }
+
+        // max-heap, the root is the farthest of the closest listings found so far
+        PriorityQueue<Map.Entry<UUID, Double>> closest =
+                new PriorityQueue<>(limit, Map.Entry.<UUID, Double>comparingByValue().reversed());
+
+        long centerLat = cellCoordinate(center.latitude());
+        long centerLon = cellCoordinate(center.longitude());
+        double cellKm = CELL_DEGREES * KM_PER_DEGREE * cosLatitude(center);
+
+        for (long ring = 0; ; ring++) {
+            // a full ring search costs more than checking every listing once
+            if ((2 * ring + 1) * (2 * ring + 1) > cells.size()) {
+                closest.clear();
+                points.forEach((id, point) -> offer(closest, limit, id, point, center, accept));
+                break;
+            }
+
+            for (long lat = centerLat - ring; lat <= centerLat + ring; lat++) {
+                // only the border of the ring, the inner cells were searched before
+                long step = (lat == centerLat - ring || lat == centerLat + ring) ? 1 : Math.max(1, 2 * ring);
+
+                for (long lon = centerLon - ring; lon <= centerLon + ring; lon += step) {
+                    Set<UUID> ids = cells.get(cellKey(lat, lon));
+
+                    if (ids == null) {
+                        continue;
+                    }
+
+                    for (UUID id : ids) {
+                        GeoPoint point = points.get(id);
+
+                        if (point != null) {
+                            offer(closest, limit, id, point, center, accept);
+                        }
+                    }
+                }
+            }
+
+            // every cell outside of the ring is at least this far away from the center
+            if (closest.size() == limit && closest.peek().getValue() <= ring * cellKm) {
+                break;
+            }
+        }
+
+        LinkedList<UUID> result = new LinkedList<>();
+        while (!closest.isEmpty()) {
+            result.addFirst(closest.poll().getKey());
+        }
+
+        return result;
+    }
+
+    /**
+     * @param listingId id of an indexed listing
+     * @return indexed coordinates of the listing or empty if it could not be located
+     */
+    public @NotNull Optional<GeoPoint> pointOf(@NotNull UUID listingId) {
+        return Optional.ofNullable(points.get(listingId));
+    }
+
+    private @Nullable GeoPoint locate(@Nullable Location location) {
+        if (location == null) {
+            return null;
+        }
+
+        if (location.hasCoordinates()) {
+            return new GeoPoint(location.getLatitude(), location.getLongitude());
+        }
+
+        // listings stored before coordinates existed
+        return geocoder.geocode(location).orElse(null);
+    }
+
+    private static void offer(PriorityQueue<Map.Entry<UUID, Double>> closest, int limit, UUID id, GeoPoint point,
+                              GeoPoint center, Predicate<UUID> accept) {
+        double distance = point.distanceKm(center);
+
+        if (closest.size() == limit && closest.peek().getValue() <= distance) {
+            return;
+        }
+
+        if (!accept.test(id)) {
+            return;
+        }
+
+        closest.add(Map.entry(id, distance));
+
+        if (closest.size() > limit) {
+            closest.poll();
+        }
+    }
+
+    private static double cosLatitude(GeoPoint point) {
+        // avoids a division by zero at the poles
+        return Math.max(0.01, Math.cos(Math.toRadians(point.latitude())));
+    }
+
+    private static long cellCoordinate(double degrees) {
+        return (long) Math.floor(degrees / CELL_DEGREES);
+    }
+
+    private static long cellKey(long lat, long lon) {
+        return (lat << 32) | (lon & 0xffffffffL);
+    }
+
+    private static long cellOf(GeoPoint point) {
+        return cellKey(cellCoordinate(point.latitude()), cellCoordinate(point.longitude()));
+    }
+}
@@ -0,0 +1,70 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.geo;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.Location;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * offline geocoder which places an address at the center of its zip code (or city if the zip code is unknown). The
+ * dataset is a CSV file with the columns {@code zip_code,city,latitude,longitude}, configured with
+ * {@code cozycave.geo.zip_codes}.
+ */
+@Component
+@Slf4j
+public class ZipCodeGeocoder implements Geocoder {
+
+    private final Map<String, GeoPoint> byZipCode = new HashMap<>();
+    private final Map<String, GeoPoint> byCity = new HashMap<>();
+
+    public ZipCodeGeocoder(@Value("${cozycave.geo.zip_codes:classpath:geo/zip_codes.csv}") Resource zipCodes) {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(zipCodes.getInputStream(), StandardCharsets.UTF_8))) {
+            // skip header
+            String line = reader.readLine();
+
+            while ((line = reader.readLine()) != null) {
+                String[] columns = line.split(",");
+
+                if (columns.length != 4) {
+                    continue;
+                }
+
+                GeoPoint point = new GeoPoint(Double.parseDouble(columns[2]), Double.parseDouble(columns[3]));
+                byZipCode.putIfAbsent(columns[0].trim(), point);
+                byCity.putIfAbsent(columns[1].trim().toLowerCase(), point);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("could not read zip code coordinates from {}, addresses will not be located", zipCodes, e);
+        }
+
+        log.info("loaded coordinates of {} zip codes", byZipCode.size());
+    }
+
+    @Override
+    public @NotNull Optional<GeoPoint> geocode(@NotNull Location location) {
+        if (location.getZipCode() != null) {
+            GeoPoint point = byZipCode.get(location.getZipCode().trim());
+
+            if (point != null) {
+                return Optional.of(point);
+            }
+        }
+
+        if (location.getCity() != null) {
+            return Optional.ofNullable(byCity.get(location.getCity().trim().toLowerCase()));
+        }
+
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,74 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * position of the last listing of a page in the keyset order (sort value, id). The next page starts right after this
+ * position, so deep pages cost the same as the first one.
+ *
+ * @param property  sorted property, null if the listings are only ordered by id
+ * @param direction direction of the sorted property
+ * @param value     value of the sorted property of the last listing
+ * @param id        id of the last listing
+ */
+public record ListingCursor(
+        @Nullable String property,
+        @NotNull Sort.Direction direction,
+        @Nullable Double value,
+        @NotNull UUID id
+) {
+
+    private static final String SEPARATOR = "|";
+
+    public static @NotNull ListingCursor decode(@NotNull String cursor) {
+        String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        String[] parts = decoded.split(Pattern.quote(SEPARATOR), -1);
+
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("malformed cursor");
+        }
+
+        String property = parts[0].isEmpty() ? null : parts[0];
+        Double value = parts[2].isEmpty() ? null : Double.valueOf(parts[2]);
+
+        if (property != null && value == null) {
+            throw new IllegalArgumentException("cursor without value for " + property);
+        }
+
+        return new ListingCursor(property, Sort.Direction.fromString(parts[1]), value, UUID.fromString(parts[3]));
+    }
+
+    public @NotNull String encode() {
+        String raw = (property != null ? property : "") + SEPARATOR
+                + direction.name() + SEPARATOR
+                + (value != null ? value.toString() : "") + SEPARATOR
+                + id;
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * keyset order of the listings, the id keeps the order stable for equal values
+     *
+     * @param property  sorted property, null if the listings are only ordered by id
+     * @param direction direction of the sorted property
+     * @return order by (property, id)
+     */
+    public static @NotNull Sort sort(@Nullable String property, @NotNull Sort.Direction direction) {
+        Sort byId = Sort.by(Sort.Direction.ASC, "id");
+        return property != null ? Sort.by(direction, property).and(byId) : byId;
+    }
+
+    // a cursor can only be used with the ordering it was created for
+    public boolean matches(@Nullable String property, @NotNull Sort.Direction direction) {
+        return Objects.equals(this.property, property) && (property == null || this.direction == direction);
+    }
+}
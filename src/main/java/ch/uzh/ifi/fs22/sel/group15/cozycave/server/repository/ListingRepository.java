@@ -2,15 +2,29 @@ package ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository;
 
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.listings.Listing;
 import org.jetbrains.annotations.NotNull;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository("listingRepository")
-public interface ListingRepository extends JpaRepository<Listing, UUID> {
+public interface ListingRepository extends JpaRepository<Listing, UUID>, JpaSpecificationExecutor<Listing>,
+        ListingRepositoryCustom {
 
     @NotNull Optional<Listing> findById(@NotNull UUID id);
 
+    @Override
+    @EntityGraph(Listing.GRAPH_LIST)
+    @NotNull List<Listing> findAll(Specification<Listing> specification, @NotNull Sort sort);
+
+    @Override
+    @EntityGraph(Listing.GRAPH_LIST)
+    @NotNull List<Listing> findAllById(@NotNull Iterable<UUID> ids);
+
 }
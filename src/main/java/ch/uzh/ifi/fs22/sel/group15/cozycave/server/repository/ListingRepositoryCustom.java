@@ -0,0 +1,55 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.listings.Listing;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+public interface ListingRepositoryCustom {
+
+    /**
+     * like {@link org.springframework.data.jpa.repository.JpaSpecificationExecutor#findAll(Specification, Sort)}, but
+     * only reads the first {@code limit} listings and without the count query of a {@link
+     * org.springframework.data.domain.Page}. All associations needed to render the listings are loaded as well (see
+     * {@link #fetchAssociations(List)}).
+     */
+    @NotNull List<Listing> findAll(Specification<Listing> specification, @NotNull Sort sort, int limit);
+
+    /**
+     * loads the associations of {@link Listing#GRAPH_LIST} and the collections of the listings with a constant number
+     * of queries, instead of one query per listing when they are accessed one after another
+     *
+     * @param listings managed listings
+     * @return the same listings
+     */
+    @NotNull List<Listing> fetchAssociations(@NotNull List<Listing> listings);
+
+    /**
+     * like {@link #findAll(Specification, Sort, int)}, but only reads the fields of a {@link ListingSummary} with a
+     * constructor expression and the thumbnails with a second query, no listing entity is loaded
+     */
+    @NotNull List<ListingSummary> findSummaries(Specification<Listing> specification, @NotNull Sort sort, int limit);
+
+    /**
+     * reads only the positions of the first {@code limit} listings in the keyset order (see
+     * {@link ListingCursor#sort(String, Sort.Direction)}), without loading the listings themselves
+     *
+     * @param specification filters the listings have to match
+     * @param property      sorted property, null if the listings are only ordered by id
+     * @param direction     direction of the sorted property
+     * @param limit         maximal number of positions to read
+     * @return positions in the keyset order, each can be used as cursor for the listings after it
+     */
+    @NotNull List<ListingCursor> findPositions(Specification<Listing> specification, @Nullable String property,
+                                               @NotNull Sort.Direction direction, int limit);
+
+    /**
+     * reads only the ids of the listings matching the specification, without loading the listings themselves
+     */
+    @NotNull Set<UUID> findIds(Specification<Listing> specification);
+}
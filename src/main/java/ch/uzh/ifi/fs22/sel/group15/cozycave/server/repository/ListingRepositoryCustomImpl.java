@@ -0,0 +1,193 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.PictureState;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.Location;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.listings.Listing;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+public class ListingRepositoryCustomImpl implements ListingRepositoryCustom {
+
+    private static final String FETCH_GRAPH = "javax.persistence.fetchgraph";
+    private static final int MAX_IDS_PER_QUERY = 500;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public @NotNull List<Listing> findAll(Specification<Listing> specification, @NotNull Sort sort, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Listing> query = cb.createQuery(Listing.class);
+        Root<Listing> root = query.from(Listing.class);
+
+        if (specification != null) {
+            Predicate predicate = specification.toPredicate(root, query, cb);
+
+            if (predicate != null) {
+                query.where(predicate);
+            }
+        }
+
+        query.select(root).orderBy(QueryUtils.toOrders(sort, root, cb));
+
+        // the graph only contains single valued associations, so the limit is still applied by the database
+        List<Listing> listings = entityManager.createQuery(query)
+                .setHint(FETCH_GRAPH, entityManager.getEntityGraph(Listing.GRAPH_LIST))
+                .setMaxResults(limit)
+                .getResultList();
+
+        return fetchAssociations(listings);
+    }
+
+    @Override
+    public @NotNull List<Listing> fetchAssociations(@NotNull List<Listing> listings) {
+        if (listings.isEmpty()) {
+            return listings;
+        }
+
+        List<UUID> ids = listings.stream().map(Listing::getId).toList();
+
+        for (int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+            List<UUID> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_IDS_PER_QUERY));
+
+            // one query per collection, fetching several bags in one query is not possible (and would multiply the rows)
+            for (String collection : List.of("pictures", "floorplan", "availableTo")) {
+                entityManager.createQuery(
+                                "select distinct l from Listing l left join fetch l." + collection + " where l.id in :ids",
+                                Listing.class)
+                        .setParameter("ids", chunk)
+                        .getResultList();
+            }
+        }
+
+        return listings;
+    }
+
+    @Override
+    public @NotNull List<ListingSummary> findSummaries(Specification<Listing> specification, @NotNull Sort sort,
+                                                      int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<ListingSummary> query = cb.createQuery(ListingSummary.class);
+        Root<Listing> root = query.from(Listing.class);
+        Join<Listing, Location> address = root.join("address", JoinType.LEFT);
+
+        if (specification != null) {
+            Predicate predicate = specification.toPredicate(root, query, cb);
+
+            if (predicate != null) {
+                query.where(predicate);
+            }
+        }
+
+        query.select(cb.construct(
+                ListingSummary.class,
+                root.get("id"),
+                root.get("title"),
+                root.get("rent"),
+                root.get("sqm"),
+                root.get("listingType"),
+                address.get("city"),
+                address.get("zipCode")
+        )).orderBy(QueryUtils.toOrders(sort, root, cb));
+
+        List<ListingSummary> summaries = entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+
+        if (summaries.isEmpty()) {
+            return summaries;
+        }
+
+        List<UUID> ids = summaries.stream().map(ListingSummary::id).toList();
+        Map<UUID, String> thumbnailUrls = new HashMap<>();
+
+        for (int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+            // pictures without a state are older than the upload queue and stored already
+            List<Object[]> thumbnails = entityManager.createQuery(
+                            "select l.id, coalesce(p.thumbnailUrl, p.pictureUrl) from Listing l join l.pictures p "
+                                    + "where l.id in :ids and (p.state = :ready or p.state is null) "
+                                    + "order by p.creationDate, p.id", Object[].class)
+                    .setParameter("ids", ids.subList(from, Math.min(ids.size(), from + MAX_IDS_PER_QUERY)))
+                    .setParameter("ready", PictureState.READY)
+                    .getResultList();
+
+            // the smallest variant of the oldest stored picture is the thumbnail
+            for (Object[] thumbnail : thumbnails) {
+                thumbnailUrls.putIfAbsent((UUID) thumbnail[0], (String) thumbnail[1]);
+            }
+        }
+
+        return summaries.stream()
+                .map(summary -> summary.withThumbnailUrl(thumbnailUrls.get(summary.id())))
+                .toList();
+    }
+
+    @Override
+    public @NotNull List<ListingCursor> findPositions(Specification<Listing> specification, @Nullable String property,
+                                                      @NotNull Sort.Direction direction, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Listing> root = query.from(Listing.class);
+
+        if (specification != null) {
+            Predicate predicate = specification.toPredicate(root, query, cb);
+
+            if (predicate != null) {
+                query.where(predicate);
+            }
+        }
+
+        if (property != null) {
+            query.multiselect(root.get("id"), root.get(property));
+        } else {
+            query.multiselect(root.get("id"));
+        }
+
+        query.orderBy(QueryUtils.toOrders(ListingCursor.sort(property, direction), root, cb));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList().stream()
+                .map(tuple -> new ListingCursor(property, direction,
+                        property != null ? tuple.get(1, Double.class) : null, tuple.get(0, UUID.class)))
+                .toList();
+    }
+
+    @Override
+    public @NotNull Set<UUID> findIds(Specification<Listing> specification) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<UUID> query = cb.createQuery(UUID.class);
+        Root<Listing> root = query.from(Listing.class);
+
+        if (specification != null) {
+            Predicate predicate = specification.toPredicate(root, query, cb);
+
+            if (predicate != null) {
+                query.where(predicate);
+            }
+        }
+
+        query.select(root.get("id"));
+
+        return new HashSet<>(entityManager.createQuery(query).getResultList());
+    }
+}
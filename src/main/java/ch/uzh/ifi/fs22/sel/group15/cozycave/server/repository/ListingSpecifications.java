@@ -0,0 +1,99 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.Gender;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.ListingType;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.listings.Listing;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Building blocks to express the listing filters of {@code GET /v1/listings} as a single database query. Every
+ * specification mirrors the corresponding in-memory filter of
+ * {@link ch.uzh.ifi.fs22.sel.group15.cozycave.server.controller.ListingController.ListingFilter}.
+ */
+public final class ListingSpecifications {
+
+    private ListingSpecifications() {
+    }
+
+    public static Specification<Listing> rentAtLeast(int minRent) {
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.<Double>get("rent"), (double) minRent);
+    }
+
+    public static Specification<Listing> rentAtMost(int maxRent) {
+        return (root, query, cb) -> cb.lessThanOrEqualTo(root.<Double>get("rent"), (double) maxRent);
+    }
+
+    // listing has to be available to all requested genders
+    public static Specification<Listing> availableToAll(List<Gender> genders) {
+        return (root, query, cb) -> cb.and(genders.stream()
+                .map(gender -> cb.isMember(gender, root.<List<Gender>>get("availableTo")))
+                .toArray(Predicate[]::new));
+    }
+
+    public static Specification<Listing> listingTypeIn(List<ListingType> listingTypes) {
+        return (root, query, cb) -> listingTypes.isEmpty()
+                ? cb.disjunction()
+                : root.get("listingType").in(listingTypes);
+    }
+
+    // the bare column is compared, so that idx_location_city can be used
+    public static Specification<Listing> cityEquals(String city) {
+        return (root, query, cb) -> cb.equal(root.get("address").get("city"), city);
+    }
+
+    public static Specification<Listing> zipCodeEquals(String zipCode) {
+        return (root, query, cb) -> cb.equal(root.get("address").get("zipCode"), zipCode);
+    }
+
+    public static Specification<Listing> sqmAtLeast(int minSqm) {
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.<Double>get("sqm"), (double) minSqm);
+    }
+
+    public static Specification<Listing> sqmAtMost(int maxSqm) {
+        return (root, query, cb) -> cb.lessThanOrEqualTo(root.<Double>get("sqm"), (double) maxSqm);
+    }
+
+    // the AVAILABLE filter has always been matched against the published flag
+    public static Specification<Listing> publishedEquals(boolean published) {
+        return (root, query, cb) -> cb.equal(root.get("published"), published);
+    }
+
+    public static Specification<Listing> idIn(Collection<UUID> ids) {
+        return (root, query, cb) -> ids.isEmpty()
+                ? cb.disjunction()
+                : root.get("id").in(ids);
+    }
+
+    public static Specification<Listing> hasValue(String property) {
+        return (root, query, cb) -> cb.isNotNull(root.get(property));
+    }
+
+    /**
+     * keyset condition for the listings following the cursor in the order (property, id)
+     *
+     * @param cursor position of the last listing of the previous page
+     * @return specification matching all listings after the cursor
+     */
+    public static Specification<Listing> after(ListingCursor cursor) {
+        return (root, query, cb) -> {
+            Predicate idAfter = cb.greaterThan(root.<UUID>get("id"), cursor.id());
+
+            if (cursor.property() == null) {
+                return idAfter;
+            }
+
+            Path<Double> value = root.get(cursor.property());
+            Predicate valueAfter = cursor.direction().isAscending()
+                    ? cb.greaterThan(value, cursor.value())
+                    : cb.lessThan(value, cursor.value());
+
+            return cb.or(valueAfter, cb.and(cb.equal(value, cursor.value()), idAfter));
+        };
+    }
+}
@@ -0,0 +1,33 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.ListingType;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.UUID;
+
+/**
+ * the fields of a listing shown in list views, read with a projection query without loading the listing entities
+ *
+ * @param thumbnailUrl url of the first picture of the listing, null if it has none
+ */
+public record ListingSummary(
+        UUID id,
+        String title,
+        Double rent,
+        Double sqm,
+        ListingType listingType,
+        String city,
+        String zipCode,
+        @Nullable String thumbnailUrl
+) {
+
+    // used by the constructor expression of the projection query, the thumbnail is read afterwards
+    public ListingSummary(UUID id, String title, Double rent, Double sqm, ListingType listingType, String city,
+                          String zipCode) {
+        this(id, title, rent, sqm, listingType, city, zipCode, null);
+    }
+
+    public ListingSummary withThumbnailUrl(@Nullable String thumbnailUrl) {
+        return new ListingSummary(id, title, rent, sqm, listingType, city, zipCode, thumbnailUrl);
+    }
+}
@@ -0,0 +1,41 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.PictureBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import java.util.Date;
+import java.util.Optional;
+
+@Repository(value = "pictureBlobRepository")
+public interface PictureBlobRepository extends JpaRepository<PictureBlob, String> {
+
+    // the reference count is only changed while the row is locked
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b from PictureBlob b where b.hash = :hash")
+    Optional<PictureBlob> findByHashForUpdate(@Param("hash") String hash);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b from PictureBlob b where b.filename = :filename")
+    Optional<PictureBlob> findByFilenameForUpdate(@Param("filename") String filename);
+
+    Optional<PictureBlob> findByFilename(String filename);
+
+    // a plain insert, save would merge into a row another transaction inserted in the meantime
+    @Modifying
+    @Query(value = "insert into picture_blobs (hash, creation_date, filename, reference_count, state) "
+            + "values (:hash, :creationDate, :filename, 0, 'PENDING')", nativeQuery = true)
+    void insertUnreferenced(@Param("hash") String hash, @Param("creationDate") Date creationDate,
+                            @Param("filename") String filename);
+
+    // a blob which is being referenced is locked, the delete waits for it and skips it after the commit
+    @Modifying
+    @Query("delete from PictureBlob b where b.referenceCount = 0 and b.creationDate < :before")
+    int deleteUnreferencedBefore(@Param("before") Date before);
+
+}
@@ -3,8 +3,13 @@ package ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.Picture;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -13,4 +18,13 @@ public interface PictureRepository extends JpaRepository<Picture, UUID> {
 
     @NotNull Optional<Picture> findById(@NotNull UUID id);
 
+    List<Picture> findByPictureUrl(String pictureUrl);
+
+    boolean existsByPictureUrl(String pictureUrl);
+
+    // one statement for all pictures; the persistence context is cleared, so no deleted picture is still managed
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Picture p where p.id in :ids")
+    int deleteByIdIn(@Param("ids") Collection<UUID> ids);
+
 }
\ No newline at end of file
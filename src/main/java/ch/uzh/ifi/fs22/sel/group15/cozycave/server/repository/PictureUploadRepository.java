@@ -0,0 +1,17 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.PictureUpload;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+@Repository(value = "pictureUploadRepository")
+public interface PictureUploadRepository extends JpaRepository<PictureUpload, UUID> {
+
+    List<PictureUpload> findByNextAttemptLessThanEqualOrderByNextAttemptAsc(Date now, Pageable pageable);
+
+}
@@ -0,0 +1,16 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.ResumableUpload;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+@Repository(value = "resumableUploadRepository")
+public interface ResumableUploadRepository extends JpaRepository<ResumableUpload, UUID> {
+
+    List<ResumableUpload> findByCreationDateBefore(Date date);
+
+}
@@ -0,0 +1,33 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.StorageOutboxEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+@Repository(value = "storageOutboxRepository")
+public interface StorageOutboxRepository extends JpaRepository<StorageOutboxEntry, UUID> {
+
+    List<StorageOutboxEntry> findByNextAttemptLessThanEqualOrderByNextAttemptAsc(Date now, Pageable pageable);
+
+    // the relay claims the entries of a batch until their files are deleted
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select e from StorageOutboxEntry e where e.id in :ids order by e.id")
+    List<StorageOutboxEntry> findByIdInForUpdate(@Param("ids") Collection<UUID> ids);
+
+    // a bulk delete, it waits for the entries the relay has claimed instead of failing on them
+    @Modifying
+    @Query("delete from StorageOutboxEntry e where e.filename like concat(:prefix, '%')")
+    int deleteByFilenameStartingWith(@Param("prefix") String prefix);
+
+}
@@ -1,8 +1,11 @@
 package ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository;
 
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.Role;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.User;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -18,4 +21,14 @@ public interface UserRepository extends JpaRepository<User, UUID> {
     boolean existsByAuthenticationData_Email(@NotNull String email);
 
     @NotNull Optional<User> findByDetailsPictureId(@NotNull UUID id);
+
+    interface Credentials {
+        Role getRole();
+
+        long getPasswordVersion();
+    }
+
+    // without the eager graph of the user
+    @Query("select u.role as role, a.passwordVersion as passwordVersion from User u join u.authenticationData a where u.id = :id")
+    @NotNull Optional<Credentials> findCredentialsById(@Param("id") @NotNull UUID id);
 }
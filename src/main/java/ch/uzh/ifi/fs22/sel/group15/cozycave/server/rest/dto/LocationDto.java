@@ -42,5 +42,16 @@ public class LocationDto implements Serializable {
     private String state;
 
     private String country;
+
+    @JsonInclude(Include.NON_NULL)
+    private Double latitude;
+
+    @JsonInclude(Include.NON_NULL)
+    private Double longitude;
+
+    public LocationDto(UUID id, String name, String description, String street, String houseNumber,
+                       String apartmentNumber, String zipCode, String city, String state, String country) {
+        this(id, name, description, street, houseNumber, apartmentNumber, zipCode, city, state, country, null, null);
+    }
 }
 
@@ -1,5 +1,6 @@
 package ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.dto;
 
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.PictureState;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -21,4 +22,24 @@ public class PictureGetDto implements Serializable {
 
     @JsonProperty("picture_url")
     private String pictureUrl;
+
+    private PictureState state;
+
+    // downscaled JPEG copies, null if not (yet) available, clients fall back to the next larger one or picture_url
+    @JsonProperty("thumbnail_url")
+    private String thumbnailUrl;
+
+    @JsonProperty("medium_url")
+    private String mediumUrl;
+
+    @JsonProperty("large_url")
+    private String largeUrl;
+
+    public PictureGetDto(UUID id, Date creationDate, String pictureUrl) {
+        this(id, creationDate, pictureUrl, PictureState.READY);
+    }
+
+    public PictureGetDto(UUID id, Date creationDate, String pictureUrl, PictureState state) {
+        this(id, creationDate, pictureUrl, state, null, null, null);
+    }
 }
@@ -0,0 +1,22 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.dto.listings;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class ListingPageDto<T> implements Serializable {
+
+    // ListingGetDto or ListingSummaryDto, depending on the requested view
+    private List<T> listings;
+
+    // null on the last page
+    @JsonProperty("next_cursor")
+    private String nextCursor;
+}
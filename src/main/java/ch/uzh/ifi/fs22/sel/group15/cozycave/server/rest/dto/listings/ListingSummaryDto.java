@@ -0,0 +1,45 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.dto.listings;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.ListingType;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+/**
+ * the fields of a listing shown in list views, see
+ * {@link ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.ListingSummary}
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class ListingSummaryDto implements Serializable {
+
+    private UUID id;
+
+    private String title;
+
+    @JsonInclude(Include.NON_NULL)
+    private Double rent;
+
+    @JsonInclude(Include.NON_NULL)
+    private Double sqm;
+
+    @JsonProperty("listing_type")
+    private ListingType listingType;
+
+    private String city;
+
+    @JsonProperty("zip_code")
+    private String zipCode;
+
+    // url of the first picture of the listing
+    @JsonProperty("thumbnail_url")
+    @JsonInclude(Include.NON_NULL)
+    private String thumbnailUrl;
+}
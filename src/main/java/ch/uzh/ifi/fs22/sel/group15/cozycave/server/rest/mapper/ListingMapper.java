@@ -1,8 +1,10 @@
 package ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.mapper;
 
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.listings.Listing;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.ListingSummary;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.dto.listings.ListingGetDto;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.dto.listings.ListingPostPutDto;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.dto.listings.ListingSummaryDto;
 import org.mapstruct.*;
 import org.mapstruct.factory.Mappers;
 
@@ -25,4 +27,6 @@ public interface ListingMapper {
     Listing listingPostPutDtoToListing(ListingPostPutDto listingPostPutDto);
 
     ListingPostPutDto listingToListingPostPutDto(Listing listing);
+
+    ListingSummaryDto listingSummaryToListingSummaryDto(ListingSummary listingSummary);
 }
@@ -0,0 +1,291 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.search;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.listings.Listing;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.ListingRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * in-memory inverted index from the tokens of a listing (title, description, city and zip code) to the ids of the
+ * listings containing them. A SEARCH query only reads the posting lists of its tokens instead of tokenizing every
+ * listing on every request.
+ * <p>
+ * The postings keep the term frequency per field, so matches can also be ranked with BM25F (BM25 with weighted
+ * fields, see {@link Field}).
+ */
+@Component
+@Slf4j
+public class ListingSearchIndex {
+
+    // usual BM25 defaults
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final ListingRepository listingRepository;
+
+    // token -> listing id -> term frequency per field (indexed by Field#ordinal)
+    private final Map<String, Map<UUID, int[]>> postings = new ConcurrentHashMap<>();
+    private final Map<UUID, Set<String>> tokensByListing = new ConcurrentHashMap<>();
+    private final Map<UUID, int[]> fieldLengthsByListing = new ConcurrentHashMap<>();
+    private final AtomicLongArray totalFieldLengths = new AtomicLongArray(Field.values().length);
+
+    public ListingSearchIndex(ListingRepository listingRepository) {
+        this.listingRepository = listingRepository;
+    }
+
+    /**
+     * searchable fields of a listing, a match in the title counts three times as much as one in the description
+     */
+    public enum Field {
+        TITLE(3.0, Listing::getTitle),
+        DESCRIPTION(1.0, Listing::getDescription),
+        CITY(2.0, listing -> listing.getAddress() != null ? listing.getAddress().getCity() : null),
+        ZIP_CODE(2.0, listing -> listing.getAddress() != null ? listing.getAddress().getZipCode() : null);
+
+        private final double boost;
+        private final Function<Listing, String> extractor;
+
+        Field(double boost, Function<Listing, String> extractor) {
+            this.boost = boost;
+            this.extractor = extractor;
+        }
+
+        public double getBoost() {
+            return boost;
+        }
+
+        private List<String> tokens(Listing listing) {
+            String text = extractor.apply(listing);
+            return text != null ? Arrays.asList(text.toLowerCase().split(" ")) : List.of();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        List<Listing> listings = listingRepository.findAll();
+
+        synchronized (this) {
+            postings.clear();
+            tokensByListing.clear();
+            fieldLengthsByListing.clear();
+            for (int i = 0; i < totalFieldLengths.length(); i++) {
+                totalFieldLengths.set(i, 0);
+            }
+            listings.forEach(this::index);
+        }
+
+        log.info("indexed {} listings with {} distinct tokens for search", tokensByListing.size(), postings.size());
+    }
+
+    public synchronized void index(@Nullable Listing listing) {
+        if (listing == null || listing.getId() == null) {
+            return;
+        }
+
+        remove(listing.getId());
+
+        Field[] fields = Field.values();
+        Map<String, int[]> frequencies = new HashMap<>();
+        int[] fieldLengths = new int[fields.length];
+
+        for (Field field : fields) {
+            List<String> tokens = field.tokens(listing);
+            fieldLengths[field.ordinal()] = tokens.size();
+            tokens.forEach(token -> frequencies.computeIfAbsent(token, t -> new int[fields.length])[field.ordinal()]++);
+        }
+
+        frequencies.forEach((token, tf) ->
+                postings.computeIfAbsent(token, t -> new ConcurrentHashMap<>()).put(listing.getId(), tf));
+        tokensByListing.put(listing.getId(), frequencies.keySet());
+        fieldLengthsByListing.put(listing.getId(), fieldLengths);
+        for (int i = 0; i < fieldLengths.length; i++) {
+            totalFieldLengths.addAndGet(i, fieldLengths[i]);
+        }
+    }
+
+    public synchronized void remove(@Nullable UUID id) {
+        if (id == null) {
+            return;
+        }
+
+        Set<String> tokens = tokensByListing.remove(id);
+
+        if (tokens == null) {
+            return;
+        }
+
+        tokens.forEach(token -> postings.computeIfPresent(token, (t, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        }));
+
+        int[] fieldLengths = fieldLengthsByListing.remove(id);
+        for (int i = 0; i < fieldLengths.length; i++) {
+            totalFieldLengths.addAndGet(i, -fieldLengths[i]);
+        }
+    }
+
+    /**
+     * finds all listings sharing at least one token with the search query
+     *
+     * @param search lower case query with umlauts already replaced (ä -> ae)
+     * @return ids of the matching listings
+     */
+    public @NotNull Set<UUID> search(@NotNull String search) {
+        Set<UUID> result = new HashSet<>();
+
+        for (String token : expandQuery(search)) {
+            Map<UUID, int[]> ids = postings.get(token);
+
+            if (ids != null) {
+                result.addAll(ids.keySet());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * ranks the listings matching the search query by their BM25F score. Only the best {@code limit} listings are
+     * kept in a bounded heap, the other matches are never sorted.
+     *
+     * @param search lower case query with umlauts already replaced (ä -> ae)
+     * @param accept only listings accepted by this predicate are ranked, e.g. the ones matching the other filters
+     * @param limit  maximal number of listings to return
+     * @return ids of the best matching listings, best match first
+     */
+    public @NotNull List<UUID> rank(@NotNull String search, @NotNull Predicate<UUID> accept, int limit) {
+        Map<UUID, Double> scores = score(search, accept);
+
+        // min-heap, the root is the worst of the best listings found so far; equal scores are ordered by id
+        Comparator<Map.Entry<UUID, Double>> byScore = Map.Entry.<UUID, Double>comparingByValue()
+                .thenComparing(Map.Entry.<UUID, Double>comparingByKey().reversed());
+        PriorityQueue<Map.Entry<UUID, Double>> best = new PriorityQueue<>(Math.max(1, limit), byScore);
+
+        for (Map.Entry<UUID, Double> entry : scores.entrySet()) {
+            if (best.size() < limit) {
+                best.add(entry);
+            } else if (limit > 0 && byScore.compare(entry, best.peek()) > 0) {
+                best.poll();
+                best.add(entry);
+            }
+        }
+
+        LinkedList<UUID> ranked = new LinkedList<>();
+        while (!best.isEmpty()) {
+            ranked.addFirst(best.poll().getKey());
+        }
+
+        return ranked;
+    }
+
+    /**
+     * sums the BM25F scores of all words of the query. The spelling variants of a word (see
+     * {@link #expandQuery(String)}) only count once, with the score of the best matching variant.
+     */
+    @NotNull Map<UUID, Double> score(@NotNull String search, @NotNull Predicate<UUID> accept) {
+        Map<UUID, Double> scores = new HashMap<>();
+
+        int listingCount = Math.max(1, tokensByListing.size());
+        double[] averageFieldLengths = new double[Field.values().length];
+        for (int i = 0; i < averageFieldLengths.length; i++) {
+            averageFieldLengths[i] = Math.max(1.0, (double) totalFieldLengths.get(i) / listingCount);
+        }
+
+        for (String word : new LinkedHashSet<>(Arrays.asList(search.split(" ")))) {
+            Map<UUID, Double> wordScores = new HashMap<>();
+
+            for (String token : variants(word)) {
+                Map<UUID, int[]> ids = postings.get(token);
+
+                if (token.isEmpty() || ids == null) {
+                    continue;
+                }
+
+                double idf = Math.log(1 + (listingCount - ids.size() + 0.5) / (ids.size() + 0.5));
+
+                ids.forEach((id, tf) -> {
+                    int[] fieldLengths = fieldLengthsByListing.get(id);
+
+                    if (fieldLengths == null || !accept.test(id)) {
+                        return;
+                    }
+
+                    double weightedTf = 0;
+                    for (Field field : Field.values()) {
+                        int i = field.ordinal();
+                        weightedTf += field.getBoost() * tf[i] / (1 - B + B * fieldLengths[i] / averageFieldLengths[i]);
+                    }
+
+                    wordScores.merge(id, idf * weightedTf / (K1 + weightedTf), Math::max);
+                });
+            }
+
+            wordScores.forEach((id, score) -> scores.merge(id, score, Double::sum));
+        }
+
+        return scores;
+    }
+
+    /**
+     * splits the searchable fields of a listing into lower case tokens
+     *
+     * @param listing listing to tokenize
+     * @return all tokens of title, description, city and zip code
+     */
+    public static @NotNull Set<String> tokenize(@NotNull Listing listing) {
+        Set<String> tokens = new HashSet<>();
+
+        for (Field field : Field.values()) {
+            tokens.addAll(field.tokens(listing));
+        }
+
+        return tokens;
+    }
+
+    /**
+     * adds the spelling variants of every word of the query, so that "zuerich" also finds "zürich" and vice versa
+     *
+     * @param search lower case query with umlauts already replaced (ä -> ae)
+     * @return tokens to look up
+     */
+    public static @NotNull Set<String> expandQuery(@NotNull String search) {
+        Set<String> tokens = new HashSet<>();
+
+        for (String s : search.split(" ")) {
+            tokens.addAll(variants(s));
+        }
+
+        return tokens;
+    }
+
+    private static Set<String> variants(String word) {
+        return new HashSet<>(List.of(
+                word,
+                word
+                        .replace("ae", "ä")
+                        .replace("ue", "ü")
+                        .replace("oe", "ö"),
+                word
+                        .replace("ä", "ae")
+                        .replace("ü", "ue")
+                        .replace("ö", "oe"),
+                word
+                        .replace("ä", "a")
+                        .replace("ü", "u")
+                        .replace("ö", "o")
+        ));
+    }
+}
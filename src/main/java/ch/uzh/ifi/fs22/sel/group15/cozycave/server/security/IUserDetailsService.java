@@ -4,15 +4,17 @@ import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.User;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.UserRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.UUID;
 
 @Service
 @Slf4j
-public class IUserDetailsService implements UserDetailsService {
+public class IUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
 
     private final UserRepository userRepository;
 
@@ -22,7 +24,7 @@ public class IUserDetailsService implements UserDetailsService {
 
     @Override
     public UserDetails loadUserByUsername(String uuid) throws UsernameNotFoundException {
-        log.error("loadUserByUsername: " + uuid);
+        log.debug("loading user details of {}", uuid);
         User user = userRepository.findById(UUID.fromString(uuid))
                 .orElseThrow(() -> new UsernameNotFoundException("invalid token: user not found"));
 
@@ -32,4 +34,24 @@ public class IUserDetailsService implements UserDetailsService {
                 .authorities(user.getRole().generatePermittedAuthoritiesList())
                 .build();
     }
+
+    /**
+     * stores the new hash of a password after a successful login with a hash of an outdated encoder or work factor. The
+     * password itself is the same, so the password version and with it the issued tokens stay valid.
+     */
+    @Override
+    @Transactional
+    public UserDetails updatePassword(UserDetails userDetails, String newPassword) {
+        User user = userRepository.findById(UUID.fromString(userDetails.getUsername()))
+                .orElseThrow(() -> new UsernameNotFoundException("user not found"));
+
+        user.getAuthenticationData().setPassword(newPassword);
+        userRepository.saveAndFlush(user);
+
+        log.info("rehashed password of user {}", user.getId());
+
+        return org.springframework.security.core.userdetails.User.withUserDetails(userDetails)
+                .password(newPassword)
+                .build();
+    }
 }
@@ -1,10 +1,13 @@
 package ch.uzh.ifi.fs22.sel.group15.cozycave.server.security;
 
+import io.jsonwebtoken.Claims;
+import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -14,8 +17,10 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.UUID;
 
+@Slf4j
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     @Autowired
@@ -24,19 +29,41 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     @Autowired
     private IUserDetailsService iUserDetailsService;
 
+    @Autowired
+    private PrincipalCache principalCache;
+
+    // authorities are taken from the signed role claims instead of the user
+    @Value("${cozycave.security.jwt.stateless_roles:false}")
+    private boolean statelessRoles;
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
         String jwt = getJwtFromRequest(request);
 
-        if (StringUtils.hasText(jwt) && jwtTokenProvider.validateToken(jwt)) {
-            UUID uuid = jwtTokenProvider.getUuidFromToken(jwt);
-            UserDetails userDetails = iUserDetailsService.loadUserByUsername(uuid.toString());
+        if (StringUtils.hasText(jwt)) {
+            Claims claims = jwtTokenProvider.parseClaims(jwt);
+            UUID uuid = UUID.fromString(claims.getSubject());
+            Collection<? extends GrantedAuthority> authorities = statelessRoles
+                    ? jwtTokenProvider.getAuthorities(claims)
+                    : null;
+
+            if (authorities != null && jwtTokenProvider.isRevoked(uuid, claims)) {
+                log.debug("token of user {} was issued before a change of role or password", uuid);
+                filterChain.doFilter(request, response);
+                return;
+            }
+
+            if (authorities == null) {
+                authorities = principalCache.get(uuid,
+                        () -> iUserDetailsService.loadUserByUsername(uuid.toString())).authorities();
+            }
 
+            // the token is the credential, the password is not kept in the security context
             UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
-                    userDetails.getUsername(),
-                    userDetails.getPassword(),
-                    userDetails.getAuthorities()
+                    uuid.toString(),
+                    null,
+                    authorities
             );
 
             authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
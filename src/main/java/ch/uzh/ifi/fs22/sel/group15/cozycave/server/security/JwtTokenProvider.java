@@ -1,11 +1,16 @@
 package ch.uzh.ifi.fs22.sel.group15.cozycave.server.security;
 
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.Role;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.stereotype.Component;
 
@@ -13,6 +18,7 @@ import java.sql.Date;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -20,12 +26,18 @@ import java.util.stream.Collectors;
 @Slf4j
 public class JwtTokenProvider {
 
+    static final String ROLES_CLAIM = "roles";
+    static final String VERSION_CLAIM = "ver";
+
     @Value("${cozycave.security.jwt.secret}")
     private String jwtSecret;
 
     @Value("${cozycave.security.jwt.expiration_days}")
     private int expiration;
 
+    @Autowired
+    private TokenVersions tokenVersions;
+
     public String generateToken(UUID uuid, Collection<Role> roles) {
         Instant now = Instant.now();
         Instant expiryTime = now.plus(expiration, ChronoUnit.DAYS);
@@ -35,7 +47,8 @@ public class JwtTokenProvider {
                 .setIssuedAt(Date.from(now))
                 .setNotBefore(Date.from(now))
                 .setExpiration(Date.from(expiryTime))
-                .claim("roles", roles)
+                .claim(ROLES_CLAIM, roles)
+                .claim(VERSION_CLAIM, tokenVersions.get(uuid))
                 .signWith(SignatureAlgorithm.HS512, jwtSecret)
                 .compact();
     }
@@ -50,6 +63,50 @@ public class JwtTokenProvider {
         );
     }
 
+    /**
+     * @return claims of a token with a valid signature
+     * @throws io.jsonwebtoken.JwtException if the token is invalid or expired
+     */
+    public @NotNull Claims parseClaims(@NotNull String token) {
+        return Jwts.parser()
+                .setSigningKey(jwtSecret)
+                .parseClaimsJws(token)
+                .getBody();
+    }
+
+    /**
+     * @return authorities of the signed role claims, {@code null} for tokens issued without a version, whose
+     * authorities have to be loaded
+     */
+    public @Nullable Collection<? extends GrantedAuthority> getAuthorities(@NotNull Claims claims) {
+        List<?> roles = claims.get(ROLES_CLAIM, List.class);
+
+        if (roles == null || roles.isEmpty() || claims.get(VERSION_CLAIM) == null) {
+            return null;
+        }
+
+        // the claim lists all permitted roles, the highest one determines the authorities
+        Role highest = null;
+        for (Object role : roles) {
+            Role claimed = Role.valueOf(role.toString());
+
+            if (highest == null || claimed.greaterThan(highest)) {
+                highest = claimed;
+            }
+        }
+
+        return highest.generatePermittedAuthoritiesList();
+    }
+
+    /**
+     * @return whether the role or the password of the user changed since the token was issued
+     */
+    public boolean isRevoked(@NotNull UUID uuid, @NotNull Claims claims) {
+        Number version = claims.get(VERSION_CLAIM, Number.class);
+
+        return version == null || !tokenVersions.matches(uuid, version.longValue());
+    }
+
     public UUID getUuidFromToken(String token) {
         return UUID.fromString(Jwts.parser()
                 .setSigningKey(jwtSecret)
@@ -0,0 +1,58 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.security;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * runs password hashing and verification of logins and registrations on a small pool of its own. Hashing is CPU bound
+ * and deliberately slow, a burst of logins would otherwise occupy the request threads of all other endpoints.
+ * <p>
+ * The queue is bounded, when it is full the login is refused with a 429 instead of waiting for a worker.
+ */
+@Component
+@Slf4j
+public class LoginExecutor {
+
+    private final ThreadPoolExecutor workers;
+
+    public LoginExecutor(
+            @Value("${cozycave.security.login.workers:0}") int workers,
+            @Value("${cozycave.security.login.queue_size:64}") int queueSize) {
+        // by default one worker per core, more threads would only share the same cores
+        int threads = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+
+        this.workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                new ThreadFactoryBuilder().setNameFormat("login-%d").setDaemon(true).build());
+    }
+
+    /**
+     * @throws ResponseStatusException with 429 if all workers are busy and the queue is full
+     */
+    public <T> @NotNull CompletableFuture<T> submit(@NotNull Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, workers);
+        } catch (RejectedExecutionException e) {
+            log.warn("refused login, {} logins are waiting", workers.getQueue().size());
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "too many logins, try again later");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdown();
+    }
+}
@@ -0,0 +1,95 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.security;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * principals of authenticated requests, keyed by user id, so that a request with a valid token does not load the user
+ * from the database. Entries are dropped when the role or the password of the user changes or the user is deleted, the
+ * expiry bounds the age of entries changed without the {@link ch.uzh.ifi.fs22.sel.group15.cozycave.server.service.UserService}.
+ * <p>
+ * Only the name and the authorities are kept, the password hash is not needed once the token is validated.
+ */
+@Component
+@Slf4j
+public class PrincipalCache {
+
+    private final Cache<UUID, Principal> principals;
+
+    public PrincipalCache(
+            @Value("${cozycave.security.principal_cache.max_size:10000}") long maxSize,
+            @Value("${cozycave.security.principal_cache.ttl_seconds:300}") long ttlSeconds) {
+        this.principals = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
+
+    public record Principal(String username, Collection<? extends GrantedAuthority> authorities) {
+
+        public Principal {
+            authorities = List.copyOf(authorities);
+        }
+    }
+
+    /**
+     * @param loader loads the user if it is not cached, concurrent requests of the same user share one load
+     * @throws RuntimeException thrown by the loader, e.g. a
+     *                          {@link org.springframework.security.core.userdetails.UsernameNotFoundException}
+     */
+    public @NotNull Principal get(@NotNull UUID userId, @NotNull Supplier<UserDetails> loader) {
+        try {
+            return principals.get(userId, () -> {
+                UserDetails userDetails = loader.get();
+                return new Principal(userDetails.getUsername(), userDetails.getAuthorities());
+            });
+        } catch (UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+
+            throw e;
+        } catch (ExecutionException e) {
+            // the loader does not throw checked exceptions
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * drops the principal of the user. Inside of a transaction it is dropped again after the commit, otherwise a
+     * request could cache the old state between the invalidation and the commit.
+     */
+    public void invalidate(@NotNull UUID userId) {
+        invalidateNow(userId);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidateNow(userId);
+                }
+            });
+        }
+    }
+
+    private void invalidateNow(UUID userId) {
+        principals.invalidate(userId);
+        log.debug("invalidated cached principal of user {}", userId);
+    }
+}
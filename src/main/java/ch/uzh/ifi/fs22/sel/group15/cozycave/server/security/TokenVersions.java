@@ -0,0 +1,101 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.security;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.Role;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.UserRepository;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * current token version of every user, which is signed into the {@code ver} claim of a token. The version is derived
+ * from the role and the password version of the authentication data, so a token issued before one of them changed no
+ * longer matches and its role claims are not trusted any more. A rehash of the password on login keeps the version.
+ * Being derived from persisted data it survives a restart.
+ * <p>
+ * The versions are kept in memory, a user is only looked up once after a start, an expiry or a change.
+ */
+@Component
+@Slf4j
+public class TokenVersions {
+
+    // version of users which do not exist (any more), no token matches it
+    static final long NO_USER = 0;
+
+    private final UserRepository userRepository;
+    private final HashFunction hashFunction;
+    private final Cache<UUID, Long> versions;
+
+    public TokenVersions(
+            UserRepository userRepository,
+            @Value("${cozycave.security.jwt.secret}") String jwtSecret,
+            @Value("${cozycave.security.token_versions.max_size:100000}") long maxSize,
+            @Value("${cozycave.security.token_versions.ttl_seconds:3600}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        // keyed, so that the claim reveals nothing about the role or the number of password changes
+        this.hashFunction = Hashing.hmacSha256(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        this.versions = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
+
+    /**
+     * @return current version of the user, {@link #NO_USER} if the user does not exist
+     */
+    public long get(@NotNull UUID userId) {
+        try {
+            return versions.get(userId, () -> userRepository.findCredentialsById(userId)
+                    .map(credentials -> version(userId, credentials.getRole(), credentials.getPasswordVersion()))
+                    .orElse(NO_USER));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw new IllegalStateException("could not load token version of user " + userId, e.getCause());
+        }
+    }
+
+    public boolean matches(@NotNull UUID userId, long version) {
+        return version != NO_USER && get(userId) == version;
+    }
+
+    /**
+     * drops the version of the user after its role or password changed. Inside of a transaction it is dropped again
+     * after the commit, otherwise a request could load the old version between the invalidation and the commit.
+     */
+    public void invalidate(@NotNull UUID userId) {
+        versions.invalidate(userId);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    versions.invalidate(userId);
+                }
+            });
+        }
+    }
+
+    long version(@NotNull UUID userId, @NotNull Role role, long passwordVersion) {
+        long version = hashFunction.newHasher()
+                .putLong(userId.getMostSignificantBits())
+                .putLong(userId.getLeastSignificantBits())
+                .putString(role.name(), StandardCharsets.UTF_8)
+                .putChar(':')
+                .putLong(passwordVersion)
+                .hash()
+                .asLong();
+
+        return version == NO_USER ? 1 : version;
+    }
+}
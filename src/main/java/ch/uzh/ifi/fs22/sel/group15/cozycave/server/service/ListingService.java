@@ -1,27 +1,49 @@
 package ch.uzh.ifi.fs22.sel.group15.cozycave.server.service;
 
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.cache.ListingResponseCache;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.Location;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.listings.Listing;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.geo.GeoPoint;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.geo.Geocoder;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.geo.ListingGeoIndex;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.ApplicationRepository;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.ListingCursor;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.ListingRepository;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.ListingSpecifications;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.PictureRepository;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.UserRepository;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.dto.listings.ListingSummaryDto;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.mapper.ListingMapper;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.search.ListingSearchIndex;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.StringUtils;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 
 @Service
@@ -32,25 +54,177 @@ public class ListingService {
 
     private final Logger log = LoggerFactory.getLogger(ListingService.class);
 
+    // more matches than this are not sent as an IN list, see restrictToMatches
+    private static final int MAX_MATCHES_PER_QUERY = 500;
+    private static final int SCAN_BATCH_SIZE = 1000;
+    // listings ranked per requested listing before they are checked against the other filters
+    private static final int RANK_OVERFETCH = 4;
+
     private final ListingRepository listingRepository;
     private final UserRepository userRepository;
     private final ApplicationRepository applicationRepository;
     private final PictureRepository pictureRepository;
+    private final ListingSearchIndex listingSearchIndex;
+    private final ListingGeoIndex listingGeoIndex;
+    private final Geocoder geocoder;
+    private final ListingResponseCache listingResponseCache;
 
     @Autowired
     public ListingService(
             @Qualifier("listingRepository") ListingRepository listingRepository,
-            UserRepository userRepository, ApplicationRepository applicationRepository, PictureRepository pictureRepository) {
+            UserRepository userRepository, ApplicationRepository applicationRepository, PictureRepository pictureRepository,
+            ListingSearchIndex listingSearchIndex, ListingGeoIndex listingGeoIndex, Geocoder geocoder,
+            ListingResponseCache listingResponseCache) {
         this.listingRepository = listingRepository;
         this.userRepository = userRepository;
         this.applicationRepository = applicationRepository;
         this.pictureRepository = pictureRepository;
+        this.listingSearchIndex = listingSearchIndex;
+        this.listingGeoIndex = listingGeoIndex;
+        this.geocoder = geocoder;
+        this.listingResponseCache = listingResponseCache;
     }
 
     public List<Listing> getListings() {
         return this.listingRepository.findAll();
     }
 
+    public List<Listing> getListings(Specification<Listing> specification, Sort sort) {
+        return this.listingRepository.fetchAssociations(this.listingRepository.findAll(specification, sort));
+    }
+
+    public List<Listing> getListings(Specification<Listing> specification, Sort sort, int limit) {
+        return this.listingRepository.findAll(specification, sort, limit);
+    }
+
+    public List<ListingSummaryDto> getListingSummaries(Specification<Listing> specification, Sort sort, int limit) {
+        return this.listingRepository.findSummaries(specification, sort, limit).stream()
+                .map(ListingMapper.INSTANCE::listingSummaryToListingSummaryDto)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * restricts the specification to the listings of one page which are also matched by an index (SEARCH or radius
+     * search). A small set of matches is passed to the database as it is. A larger one would become a long IN list on
+     * every page, instead the positions of the listings matching the specification are read in the keyset order, one
+     * batch after another, until {@code limit} of them are matched by the index.
+     *
+     * @param specification filters the listings have to match, including the cursor of the page
+     * @param property      sorted property, null if the listings are only ordered by id
+     * @param direction     direction of the sorted property
+     * @param matches       ids of the listings matched by the index
+     * @param limit         number of listings of the page
+     * @return specification matching at most {@code limit} listings, the first ones of the page
+     */
+    public Specification<Listing> restrictToMatches(Specification<Listing> specification, @Nullable String property,
+                                                    Sort.Direction direction, Set<UUID> matches, int limit) {
+        if (matches.size() <= MAX_MATCHES_PER_QUERY) {
+            return specification.and(ListingSpecifications.idIn(matches));
+        }
+
+        List<UUID> page = new ArrayList<>();
+        Specification<Listing> remaining = specification;
+
+        while (page.size() < limit) {
+            List<ListingCursor> positions =
+                    this.listingRepository.findPositions(remaining, property, direction, SCAN_BATCH_SIZE);
+
+            for (ListingCursor position : positions) {
+                if (page.size() < limit && matches.contains(position.id())) {
+                    page.add(position.id());
+                }
+            }
+
+            if (positions.size() < SCAN_BATCH_SIZE) {
+                break;
+            }
+
+            remaining = specification.and(ListingSpecifications.after(positions.get(positions.size() - 1)));
+        }
+
+        return specification.and(ListingSpecifications.idIn(page));
+    }
+
+    public Set<UUID> searchListingIds(String search) {
+        return this.listingSearchIndex.search(search);
+    }
+
+    public Set<UUID> nearListingIds(GeoPoint center, double radiusKm) {
+        return this.listingGeoIndex.withinRadius(center, radiusKm);
+    }
+
+    /**
+     * ranks the listings matching the specification by their relevance for the search query. The index ranks more
+     * listings than requested and only these are checked against the specification, the number of ranked listings is
+     * doubled until enough of them match.
+     *
+     * @param search        lower case query with umlauts already replaced (ä -> ae)
+     * @param specification other filters the listings have to match, without the SEARCH itself
+     * @param accept        only listings accepted by this predicate are ranked, e.g. the ones of a radius search
+     * @param limit         maximal number of listings to return
+     * @return best matching listings, best match first
+     */
+    public List<Listing> rankListings(String search, Specification<Listing> specification, Predicate<UUID> accept,
+                                      int limit) {
+        List<UUID> matching = new ArrayList<>();
+        int checked = 0;
+        int candidates = Math.max(limit, 1) * RANK_OVERFETCH;
+
+        while (matching.size() < limit) {
+            // ties are ordered by id, so the ranked listings are a prefix of the ones of the next round
+            List<UUID> ranked = this.listingSearchIndex.rank(search, accept, candidates);
+
+            for (int from = checked; from < ranked.size() && matching.size() < limit; from += MAX_MATCHES_PER_QUERY) {
+                List<UUID> chunk = ranked.subList(from, Math.min(ranked.size(), from + MAX_MATCHES_PER_QUERY));
+                Set<UUID> found = this.listingRepository.findIds(specification.and(ListingSpecifications.idIn(chunk)));
+
+                chunk.stream()
+                        .filter(found::contains)
+                        .limit(limit - matching.size())
+                        .forEach(matching::add);
+            }
+
+            if (ranked.size() < candidates) {
+                break;
+            }
+
+            checked = ranked.size();
+            candidates *= 2;
+        }
+
+        return findAllInOrder(matching);
+    }
+
+    /**
+     * finds the listings closest to a point with the spatial index
+     *
+     * @param center point to measure the distance from
+     * @param limit  maximal number of listings to return
+     * @return closest listings, closest first
+     */
+    public List<Listing> findNearestListings(GeoPoint center, int limit) {
+        return findAllInOrder(this.listingGeoIndex.nearest(center, limit, id -> true));
+    }
+
+    public Optional<GeoPoint> locate(Location location) {
+        if (location.hasCoordinates()) {
+            return Optional.of(new GeoPoint(location.getLatitude(), location.getLongitude()));
+        }
+
+        return geocoder.geocode(location);
+    }
+
+    private List<Listing> findAllInOrder(List<UUID> ids) {
+        Map<UUID, Listing> listingsById = this.listingRepository
+                .fetchAssociations(this.listingRepository.findAllById(ids)).stream()
+                .collect(Collectors.toMap(Listing::getId, Function.identity()));
+
+        return ids.stream()
+                .map(listingsById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
     public @NotNull Listing createListing(Listing newListing) {
         log.debug("creating listing {}", newListing);
 
@@ -60,8 +234,14 @@ public class ListingService {
 
         checkIfDataIsValid(newListing);
 
+        geocoder.locate(newListing.getAddress());
+
         newListing = listingRepository.saveAndFlush(newListing);
 
+        Listing createdListing = newListing;
+        afterCommit(() -> indexListing(createdListing));
+        listingResponseCache.invalidate();
+
         log.info("created listing {}", newListing);
         return newListing;
     }
@@ -80,8 +260,13 @@ public class ListingService {
 
         checkIfDataIsValid(mergedListing);
 
+        geocoder.locate(mergedListing.getAddress());
+
         Listing updatedListing = listingRepository.saveAndFlush(mergedListing);
 
+        afterCommit(() -> indexListing(updatedListing));
+        listingResponseCache.invalidate();
+
         log.info("updated listing {}", updatedListing);
 
         return listingRepository.saveAndFlush(updatedListing);
@@ -98,6 +283,9 @@ public class ListingService {
 
         listingRepository.delete(listing);
 
+        afterCommit(() -> removeListingFromIndexes(listing.getId()));
+        listingResponseCache.invalidate();
+
         log.info("deleted listing {}", listing);
     }
 
@@ -108,6 +296,9 @@ public class ListingService {
 
         listingRepository.deleteById(uuid);
 
+        afterCommit(() -> removeListingFromIndexes(uuid));
+        listingResponseCache.invalidate();
+
         log.info("deleted listing with id {}", uuid);
     }
 
@@ -115,6 +306,31 @@ public class ListingService {
         return listingRepository.existsById(uuid);
     }
 
+    private void indexListing(Listing listing) {
+        listingSearchIndex.index(listing);
+        listingGeoIndex.index(listing);
+    }
+
+    private void removeListingFromIndexes(UUID uuid) {
+        listingSearchIndex.remove(uuid);
+        listingGeoIndex.remove(uuid);
+    }
+
+    // in-memory structures must only see listings which are actually stored
+    private void afterCommit(Runnable runnable) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            runnable.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                runnable.run();
+            }
+        });
+    }
+
     private @NotNull Listing mergeListing(@NotNull Listing listing, @NotNull Listing listingInput) {
         listing = listing.clone();
 
@@ -131,7 +347,17 @@ public class ListingService {
         }
 
         if (listingInput.getAddress() != null) {
-            listing.setAddress(listingInput.getAddress());
+            Location address = listingInput.getAddress();
+
+            // coordinates sent back unchanged belong to the old address, the new one is located again
+            if (listing.getAddress() != null && !listing.getAddress().hasSameAddress(address)
+                    && Objects.equals(listing.getAddress().getLatitude(), address.getLatitude())
+                    && Objects.equals(listing.getAddress().getLongitude(), address.getLongitude())) {
+                address.setLatitude(null);
+                address.setLongitude(null);
+            }
+
+            listing.setAddress(address);
         }
 
         if (listingInput.getPublished() != null) {
@@ -225,6 +451,11 @@ public class ListingService {
             if (!listing.getAddress().isValid()) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid address");
             }
+
+            if (!listing.getAddress().hasValidCoordinates()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "invalid coordinates; latitude and longitude must be given together and in range");
+            }
         }
 
         if (listing.getSqm() != null) {
@@ -0,0 +1,200 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.service;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.PictureState;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.PictureBlob;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.PictureBlobRepository;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage.StorageOutbox;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * reference counting of the content addressed picture files, see {@link PictureBlob}
+ */
+@Service
+@Transactional
+@Slf4j
+public class PictureBlobService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * @param upload true if the file is not on the storage and has to be uploaded by the caller
+     */
+    public record Reference(@NotNull PictureBlob blob, boolean upload) {
+    }
+
+    private final PictureBlobRepository pictureBlobRepository;
+    private final StorageOutbox storageOutbox;
+    private final TransactionTemplate newTransaction;
+    private final Duration unreferencedGrace;
+
+    @Autowired
+    public PictureBlobService(
+            PictureBlobRepository pictureBlobRepository,
+            StorageOutbox storageOutbox,
+            PlatformTransactionManager transactionManager,
+            @Value("${cozycave.pictures.blobs.unreferenced_grace_minutes:60}") long unreferencedGraceMinutes) {
+        this.pictureBlobRepository = pictureBlobRepository;
+        this.storageOutbox = storageOutbox;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.unreferencedGrace = Duration.ofMinutes(unreferencedGraceMinutes);
+    }
+
+    /**
+     * @return hex encoded SHA-256 of the uploaded file, the file is read once without copying it
+     */
+    public static @NotNull String hash(@NotNull MultipartFile file) {
+        try (InputStream input = file.getInputStream()) {
+            return hash(input);
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "file couldn't be read");
+        }
+    }
+
+    public static @NotNull String hash(@NotNull Path file) {
+        try (InputStream input = Files.newInputStream(file)) {
+            return hash(input);
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "file couldn't be read");
+        }
+    }
+
+    /**
+     * @return hex encoded hash of the bytes passed to the digest, which has to be one of {@link #newDigest()}
+     */
+    public static @NotNull String hash(@NotNull MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public static @NotNull MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hash(InputStream input) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+
+        while ((read = input.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+
+        return hash(digest);
+    }
+
+    /**
+     * adds a reference to the blob with the given content, the blob is created if it does not exist yet
+     * <p>
+     * A new blob is inserted without a reference in its own transaction, then the reference is added with the row
+     * locked like for an existing blob. Two requests uploading the same new content therefore both succeed, the one
+     * whose insert fails simply waits for the lock. The caller whose reference is the first one uploads the file, a
+     * deletion of the same file which is still pending in the {@link StorageOutbox} is cancelled.
+     *
+     * @param hash      hash of the content
+     * @param extension file extension used if the blob is created
+     */
+    public @NotNull Reference acquire(@NotNull String hash, @NotNull String extension) {
+        // not locked, a lock on a missing row would block the insert below
+        if (!pictureBlobRepository.existsById(hash)) {
+            insertUnreferenced(hash, hash + "." + extension);
+        }
+
+        PictureBlob blob = pictureBlobRepository.findByHashForUpdate(hash)
+                // the last reference was released between the insert and the lock
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.CONFLICT,
+                        "the same picture is being deleted, try again"));
+
+        int references = blob.getReferenceCount();
+        blob.setReferenceCount(references + 1);
+
+        // no upload has started yet (or the one which started was rolled back), or the earlier upload was given up
+        if (references == 0 || blob.getState() == PictureState.FAILED) {
+            blob.setState(PictureState.PENDING);
+            // still locked, so the outbox either has not claimed the deletion yet or has deleted the files already
+            storageOutbox.cancelDelete(hash);
+            log.debug("uploading blob {}", blob.getFilename());
+            return new Reference(blob, true);
+        }
+
+        log.debug("reusing blob {} ({} references)", blob.getFilename(), blob.getReferenceCount());
+        return new Reference(blob, false);
+    }
+
+    private void insertUnreferenced(String hash, String filename) {
+        try {
+            newTransaction.executeWithoutResult(status ->
+                    pictureBlobRepository.insertUnreferenced(hash, new Date(), filename));
+        } catch (DataIntegrityViolationException e) {
+            log.debug("blob {} was inserted by another request", filename);
+        }
+    }
+
+    /**
+     * removes a reference from the blob stored under the filename
+     *
+     * @return true if the file is not used anymore and has to be deleted from the storage; files from before the
+     * content addressing have no blob and are always deleted
+     */
+    public boolean release(@NotNull String filename) {
+        Optional<PictureBlob> existing = pictureBlobRepository.findByFilenameForUpdate(filename);
+
+        if (existing.isEmpty()) {
+            return true;
+        }
+
+        PictureBlob blob = existing.get();
+
+        if (blob.getReferenceCount() > 1) {
+            blob.setReferenceCount(blob.getReferenceCount() - 1);
+            return false;
+        }
+
+        pictureBlobRepository.delete(blob);
+        return true;
+    }
+
+    /**
+     * deletes the blobs which were inserted by {@link #acquire} for a request that was rolled back afterwards. Their
+     * insert was committed on its own, so they are left without a reference and no file. Blobs younger than the grace
+     * period are kept, their request may still be about to add its reference.
+     */
+    @Scheduled(
+            initialDelayString = "${cozycave.pictures.blobs.sweep_ms:3600000}",
+            fixedDelayString = "${cozycave.pictures.blobs.sweep_ms:3600000}")
+    public void deleteUnreferenced() {
+        int deleted = pictureBlobRepository.deleteUnreferencedBefore(
+                new Date(System.currentTimeMillis() - unreferencedGrace.toMillis()));
+
+        if (deleted > 0) {
+            log.info("deleted {} blobs without a reference", deleted);
+        }
+    }
+}
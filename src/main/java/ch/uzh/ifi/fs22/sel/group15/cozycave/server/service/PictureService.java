@@ -1,26 +1,35 @@
 package ch.uzh.ifi.fs22.sel.group15.cozycave.server.service;
 
-import ch.uzh.ifi.fs22.sel.group15.cozycave.server.FTPUploader;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.cache.ListingResponseCache;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.PictureState;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.Picture;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.listings.Listing;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.User;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.ListingRepository;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.PictureRepository;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.UserRepository;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage.PictureContentCache;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage.PictureStorage;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage.StorageOutbox;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.upload.PictureUploadQueue;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
 
 import javax.persistence.EntityNotFoundException;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.function.BiConsumer;
 
 @Service
 @Transactional
@@ -30,12 +39,27 @@ public class PictureService {
     private final ListingRepository listingRepository;
     private final UserRepository userRepository;
     private final PictureRepository pictureRepository;
+    private final ListingResponseCache listingResponseCache;
+    private final PictureUploadQueue pictureUploadQueue;
+    private final PictureStorage pictureStorage;
+    private final PictureBlobService pictureBlobService;
+    private final StorageOutbox storageOutbox;
+    private final PictureContentCache pictureContentCache;
 
     @Autowired
-    public PictureService(@Qualifier("pictureRepository") PictureRepository pictureRepository, ListingRepository listingRepository, UserRepository userRepository) {
+    public PictureService(@Qualifier("pictureRepository") PictureRepository pictureRepository, ListingRepository listingRepository, UserRepository userRepository,
+                          ListingResponseCache listingResponseCache, PictureUploadQueue pictureUploadQueue, PictureStorage pictureStorage,
+                          PictureBlobService pictureBlobService, StorageOutbox storageOutbox,
+                          PictureContentCache pictureContentCache) {
         this.pictureRepository = pictureRepository;
         this.listingRepository = listingRepository;
         this.userRepository = userRepository;
+        this.listingResponseCache = listingResponseCache;
+        this.pictureUploadQueue = pictureUploadQueue;
+        this.pictureStorage = pictureStorage;
+        this.pictureBlobService = pictureBlobService;
+        this.storageOutbox = storageOutbox;
+        this.pictureContentCache = pictureContentCache;
     }
 
     public List<Picture> getPictures() {
@@ -88,8 +112,7 @@ public class PictureService {
 
         picture.setId(UUID.randomUUID());
         picture.setCreationDate(new Date());
-        String filename = picture.getId().toString() + "." + file.getOriginalFilename().split("\\.")[1];
-        picture.setPictureUrl(Picture.ROOT_PATH + filename);
+        PictureBlobService.Reference reference = referenceBlob(picture, file);
 
         checkIfDataIsValid(picture);
 
@@ -99,23 +122,27 @@ public class PictureService {
             picture = pictureRepository.saveAndFlush(picture);
             log.debug("Uploaded new Picture: {}", picture);
 
-            if (uploader.getDetails().getPicture() != null) {
-                deletePicture(uploader.getDetails().getPicture());
-            }
+            Picture oldPicture = uploader.getDetails().getPicture();
 
             uploader.getDetails().setPicture(picture);
 
             uploader = userRepository.saveAndFlush(uploader);
 
-            //TODO: Future Feature Asynchronous upload for better user experience and less latency
-            FTPUploader ftpUploader = new FTPUploader("database.cozycave.ch", "cozyserver", "cozyserver!!??");
-            ftpUploader.uploadFile(file, filename);
-            ftpUploader.disconnect();
+            if (oldPicture != null) {
+                List<String> oldPictureUrls = releaseFiles(oldPicture);
+                pictureRepository.delete(oldPicture);
+                deleteFilesAfterCommit(oldPictureUrls);
+            }
 
+            if (reference.upload()) {
+                pictureUploadQueue.enqueue(picture.getId(), reference.blob().getFilename(), file);
+            }
 
         } catch (EntityNotFoundException e) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND,
                     "User deos not exist");
+        } catch (ResponseStatusException e) {
+            throw e;
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -137,8 +164,7 @@ public class PictureService {
             byte[] hash = null;
 
             if (userToUpdate.getDetails().getPicture() != null) {
-                String oldPictureUrl = userToUpdate.getDetails().getPicture().getPictureUrl();
-                deletePictureFromStorageServer(oldPictureUrl);
+                deletePictureFilesFromStorageServer(userToUpdate.getDetails().getPicture());
             }
             MessageDigest md = MessageDigest.getInstance("MD5");
             hash = md.digest(email);
@@ -175,8 +201,7 @@ public class PictureService {
 
         picture.setId(UUID.randomUUID());
         picture.setCreationDate(new Date());
-        String filename = picture.getId().toString() + "." + file.getOriginalFilename().split("\\.")[1];
-        picture.setPictureUrl(Picture.ROOT_PATH + filename);
+        PictureBlobService.Reference reference = referenceBlob(picture, file);
 
         checkIfDataIsValid(picture);
 
@@ -193,14 +218,17 @@ public class PictureService {
             uploadListing.setPictures(pictures);
 
             uploadListing = listingRepository.saveAndFlush(uploadListing);
+            listingResponseCache.invalidate();
 
-            FTPUploader ftpUploader = new FTPUploader("database.cozycave.ch", "cozyserver", "cozyserver!!??");
-            ftpUploader.uploadFile(file, filename);
-            ftpUploader.disconnect();
+            if (reference.upload()) {
+                pictureUploadQueue.enqueue(picture.getId(), reference.blob().getFilename(), file);
+            }
 
         } catch (EntityNotFoundException e) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND,
                     "Listing deos not exist");
+        } catch (ResponseStatusException e) {
+            throw e;
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -209,12 +237,28 @@ public class PictureService {
     }
 
     public @NotNull Picture uploadListingFloorplanPicture(Picture picture, MultipartFile file, Listing listing) {
+        return uploadListingFloorplanPicture(picture, listing, PictureBlobService.hash(file),
+                file.getOriginalFilename(), (pictureId, filename) -> pictureUploadQueue.enqueue(pictureId, filename, file));
+    }
+
+    /**
+     * @param file             completed resumable upload, moved into the upload queue if its content is new
+     * @param hash             hash of the file, see {@link ResumableUploadService#completedHash}
+     * @param originalFilename name of the file on the client
+     */
+    public @NotNull Picture uploadListingFloorplanPicture(Picture picture, Path file, String hash,
+                                                          String originalFilename, Listing listing) {
+        return uploadListingFloorplanPicture(picture, listing, hash,
+                originalFilename, (pictureId, filename) -> pictureUploadQueue.enqueue(pictureId, filename, file));
+    }
+
+    private @NotNull Picture uploadListingFloorplanPicture(Picture picture, Listing listing, String hash,
+                                                           String originalFilename, BiConsumer<UUID, String> enqueue) {
         log.debug("upload Picture {}", picture);
 
         picture.setId(UUID.randomUUID());
         picture.setCreationDate(new Date());
-        String filename = picture.getId().toString() + "." + file.getOriginalFilename().split("\\.")[1];
-        picture.setPictureUrl(Picture.ROOT_PATH + filename);
+        PictureBlobService.Reference reference = referenceBlob(picture, hash, originalFilename);
 
         checkIfDataIsValid(picture);
 
@@ -231,14 +275,17 @@ public class PictureService {
             uploadListing.setFloorplan(floorplanPictures);
 
             uploadListing = listingRepository.saveAndFlush(uploadListing);
+            listingResponseCache.invalidate();
 
-            FTPUploader ftpUploader = new FTPUploader("database.cozycave.ch", "cozyserver", "cozyserver!!??");
-            ftpUploader.uploadFile(file, filename);
-            ftpUploader.disconnect();
+            if (reference.upload()) {
+                enqueue.accept(picture.getId(), reference.blob().getFilename());
+            }
 
         } catch (EntityNotFoundException e) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND,
                     "Listing deos not exist");
+        } catch (ResponseStatusException e) {
+            throw e;
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -246,55 +293,136 @@ public class PictureService {
         return picture;
     }
 
+    /**
+     * @param url URL of a picture or one of its variants
+     * @return local copy of the file which has to be closed after it was read, empty if the picture is not in the
+     * storage (e.g. a gravatar)
+     */
+    // no database connection is held while the file is fetched
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Optional<PictureContentCache.Content> getPictureFile(String url) {
+        Optional<String> filename = pictureStorage.filenameOf(url);
+
+        if (filename.isEmpty()) {
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of(pictureContentCache.get(filename.get()));
+        } catch (IOException e) {
+            log.error("could not fetch picture {} from the storage", url, e);
+            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "picture couldn't be loaded from storage");
+        }
+    }
+
     public boolean existsPicture(UUID uuid) {
         return pictureRepository.existsById(uuid);
     }
 
-    public void deletePictureFromStorageServer(String url) {
-        String filename = url.substring(url.lastIndexOf("/") + 1);
-        try {
-            FTPUploader ftpUploader = new FTPUploader("database.cozycave.ch", "cozyserver", "cozyserver!!??");
-            ftpUploader.deleteFile(filename);
-            ftpUploader.disconnect();
-        } catch (Exception e) {
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Connection couldn't be established to storage");
-        }
+    // deletes the original and all variants
+    public void deletePictureFilesFromStorageServer(Picture picture) {
+        deleteFilesAfterCommit(releaseFiles(picture));
     }
 
     public void deletePicture(Picture picture) {
         log.debug("delete Picture {}", picture);
-        String url = picture.getPictureUrl();
+        List<String> urls = releaseFiles(picture);
 
         this.pictureRepository.delete(picture);
+        // the picture may belong to a listing
+        listingResponseCache.invalidate();
 
-        deletePictureFromStorageServer(url);
-
+        deleteFilesAfterCommit(urls);
     }
 
     public void deletePicture(UUID id) {
         log.debug("delete Picture {}", id);
-        String url = findPictureById(id).get().getPictureUrl();
+        List<String> urls = releaseFiles(findPictureById(id).get());
 
         this.pictureRepository.deleteById(id);
+        listingResponseCache.invalidate();
 
-        deletePictureFromStorageServer(url);
-
+        deleteFilesAfterCommit(urls);
     }
 
     public void deleteAll(List<Picture> picturesToBeDeleted) {
+        if (picturesToBeDeleted.isEmpty()) {
+            return;
+        }
+
+        List<UUID> ids = new ArrayList<>();
+        List<String> urls = new ArrayList<>();
 
         for (Picture picture : picturesToBeDeleted) {
-            this.deletePicture(picture);
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+            ids.add(picture.getId());
+            urls.addAll(releaseFiles(picture));
         }
 
-        pictureRepository.deleteAll(picturesToBeDeleted);
+        int deleted = pictureRepository.deleteByIdIn(ids);
+        log.debug("deleted {} pictures", deleted);
+        listingResponseCache.invalidate();
+
+        deleteFilesAfterCommit(urls);
+    }
+
+
+    /**
+     * points the picture to the file with the same content as the upload, the file is only uploaded if no other
+     * picture uses it yet
+     */
+    private PictureBlobService.Reference referenceBlob(Picture picture, MultipartFile file) {
+        return referenceBlob(picture, PictureBlobService.hash(file), file.getOriginalFilename());
     }
 
+    private PictureBlobService.Reference referenceBlob(Picture picture, String hash, String originalFilename) {
+        String extension = originalFilename.split("\\.")[1];
+        PictureBlobService.Reference reference = pictureBlobService.acquire(hash, extension);
+        String url = pictureStorage.publicUrl(reference.blob().getFilename());
+
+        picture.setPictureUrl(url);
+
+        if (reference.upload()) {
+            picture.setState(PictureState.PENDING);
+            return reference;
+        }
+
+        // a pending upload updates all pictures with its URL once it is done
+        picture.setState(reference.blob().getState());
+        pictureRepository.findByPictureUrl(url).stream().findFirst().ifPresent(existing -> {
+            picture.setThumbnailUrl(existing.getThumbnailUrl());
+            picture.setMediumUrl(existing.getMediumUrl());
+            picture.setLargeUrl(existing.getLargeUrl());
+        });
+
+        return reference;
+    }
+
+    /**
+     * drops the reference of the picture to its file
+     *
+     * @return URLs to delete from the storage, empty if the file is still used by other pictures
+     */
+    private List<String> releaseFiles(Picture picture) {
+        Optional<String> filename = pictureStorage.filenameOf(picture.getPictureUrl());
+
+        if (filename.isEmpty() || !pictureBlobService.release(filename.get())) {
+            return List.of();
+        }
+
+        return picture.getStoredUrls();
+    }
+
+    // the deletions are stored in the outbox of this transaction, the files are deleted once it is committed
+    private void deleteFilesAfterCommit(List<String> urls) {
+        List<String> filenames = urls.stream()
+                .map(pictureStorage::filenameOf)
+                .flatMap(Optional::stream)
+                .toList();
+
+        if (!filenames.isEmpty()) {
+            storageOutbox.delete(filenames);
+        }
+    }
 
     private void checkIfDataIsValid(Picture pictureToBeUploaded) {
         // check if application has empty fiels
@@ -0,0 +1,266 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.service;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.ResumableUpload;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.listings.Listing;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.User;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.ResumableUploadRepository;
+import com.google.common.io.CountingInputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * chunked, resumable uploads of large pictures (similar to the tus protocol): an upload is created with its total
+ * length, the chunks are appended at the current offset and the complete file is handed to the {@link PictureService}.
+ * <p>
+ * A chunk is written straight from the request into the file with {@link FileChannel#transferFrom}, the file is never
+ * read again before it is completed. Bytes of an interrupted chunk which already reached the disk are kept.
+ * <p>
+ * The hash of the content is updated while the chunks are received. It is only kept in memory, an upload whose hash
+ * was lost (e.g. by a restart) is hashed once when it is completed.
+ */
+@Service
+@Slf4j
+public class ResumableUploadService {
+
+    // bytes per transferFrom call, so that an interrupted chunk still advances the offset
+    private static final long TRANSFER_SIZE = 1024 * 1024;
+
+    private final ResumableUploadRepository resumableUploadRepository;
+    private final Path directory;
+    private final long maxLength;
+    private final Duration expiry;
+
+    // uploads which are receiving a chunk, a second concurrent chunk is refused
+    private final Set<UUID> active = ConcurrentHashMap.newKeySet();
+
+    private final Map<UUID, RunningHash> hashes = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ResumableUploadService(
+            ResumableUploadRepository resumableUploadRepository,
+            @Value("${file.upload-dir:./uploads}") String uploadDirectory,
+            @Value("${cozycave.pictures.resumable.max_length:209715200}") long maxLength,
+            @Value("${cozycave.pictures.resumable.expiry_hours:24}") long expiryHours) {
+        this.resumableUploadRepository = resumableUploadRepository;
+        this.directory = Path.of(uploadDirectory, "resumable").toAbsolutePath().normalize();
+        this.maxLength = maxLength;
+        this.expiry = Duration.ofHours(expiryHours);
+    }
+
+    public @NotNull ResumableUpload create(@NotNull User uploader, @NotNull Listing listing, @NotNull String filename,
+                                           long length) {
+        if (length <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Upload-Length must be positive");
+        }
+
+        if (length > maxLength) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "uploads are limited to " + maxLength + " bytes");
+        }
+
+        if (filename.indexOf('.') <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "filename needs an extension");
+        }
+
+        ResumableUpload upload = resumableUploadRepository.save(new ResumableUpload(
+                UUID.randomUUID(),
+                new Date(),
+                uploader.getId(),
+                listing.getId(),
+                filename,
+                length,
+                0
+        ));
+
+        log.debug("created resumable upload {}", upload);
+
+        return upload;
+    }
+
+    public Optional<ResumableUpload> findUpload(UUID id) {
+        return resumableUploadRepository.findById(id);
+    }
+
+    /**
+     * appends a chunk at the given offset
+     *
+     * @return offset after the chunk
+     * @throws ResponseStatusException with 409 if the offset does not match or another chunk is being received
+     */
+    public long append(@NotNull ResumableUpload upload, long offset, @NotNull InputStream chunk) {
+        if (!active.add(upload.getId())) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "another chunk of this upload is being received");
+        }
+
+        try {
+            if (offset != upload.getOffset()) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT,
+                        "Upload-Offset " + offset + " does not match " + upload.getOffset());
+            }
+
+            long position = offset;
+            IOException interruption = null;
+
+            MessageDigest digest = runningDigest(upload);
+            CountingInputStream counted = new CountingInputStream(
+                    digest != null ? new DigestInputStream(chunk, digest) : chunk);
+
+            Files.createDirectories(directory);
+
+            try (FileChannel file = FileChannel.open(path(upload), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 ReadableByteChannel input = Channels.newChannel(counted)) {
+                try {
+                    while (position < upload.getLength()) {
+                        long transferred = file.transferFrom(input, position,
+                                Math.min(TRANSFER_SIZE, upload.getLength() - position));
+
+                        if (transferred <= 0) {
+                            break;
+                        }
+
+                        position += transferred;
+                    }
+
+                    // read from the chunk itself, so that the surplus byte is not hashed
+                    if (position == upload.getLength() && chunk.read() != -1) {
+                        interruption = new IOException("chunk is longer than the upload");
+                    }
+                } catch (IOException e) {
+                    interruption = e;
+                }
+
+                // bytes behind the offset are left over from an earlier interrupted chunk
+                file.truncate(position);
+                // the offset is only stored once the bytes are on the disk
+                file.force(false);
+            }
+
+            // bytes which were read but not written would be part of the hash
+            if (digest != null && counted.getCount() == position - offset) {
+                hashes.put(upload.getId(), new RunningHash(position, digest));
+            } else {
+                hashes.remove(upload.getId());
+            }
+
+            upload.setOffset(position);
+            resumableUploadRepository.save(upload);
+
+            if (interruption != null) {
+                log.debug("chunk of upload {} was interrupted at {}: {}", upload.getId(), position, interruption.toString());
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "chunk was interrupted, continue at " + position);
+            }
+
+            return position;
+        } catch (IOException e) {
+            hashes.remove(upload.getId());
+            log.error("could not store chunk of upload {}", upload.getId(), e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "chunk couldn't be stored");
+        } finally {
+            active.remove(upload.getId());
+        }
+    }
+
+    /**
+     * @return the complete file, ownership passes to the caller who has to {@link #delete} the upload afterwards
+     * @throws ResponseStatusException with 409 if bytes are missing
+     */
+    public @NotNull Path completedFile(@NotNull ResumableUpload upload) {
+        if (upload.getOffset() != upload.getLength() || active.contains(upload.getId())) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "upload is incomplete, " + upload.getOffset() + " of " + upload.getLength() + " bytes received");
+        }
+
+        return path(upload);
+    }
+
+    /**
+     * @return hex encoded SHA-256 of the complete file, it is only read if the running hash was lost
+     * @throws ResponseStatusException with 409 if bytes are missing
+     */
+    public @NotNull String completedHash(@NotNull ResumableUpload upload) {
+        Path file = completedFile(upload);
+        RunningHash hash = hashes.get(upload.getId());
+
+        if (hash != null && hash.position() == upload.getLength()) {
+            try {
+                // the digest is reset by completing it, a failed completion may be retried
+                return PictureBlobService.hash((MessageDigest) hash.digest().clone());
+            } catch (CloneNotSupportedException e) {
+                log.warn("could not copy hash of upload {}", upload.getId(), e);
+            }
+        }
+
+        log.info("hash of upload {} was lost, reading the file", upload.getId());
+        return PictureBlobService.hash(file);
+    }
+
+    public void delete(@NotNull ResumableUpload upload) {
+        resumableUploadRepository.delete(upload);
+        hashes.remove(upload.getId());
+
+        try {
+            Files.deleteIfExists(path(upload));
+        } catch (IOException e) {
+            log.warn("could not delete file of upload {}", upload.getId(), e);
+        }
+    }
+
+    @Scheduled(
+            initialDelayString = "${cozycave.pictures.resumable.sweep_ms:3600000}",
+            fixedDelayString = "${cozycave.pictures.resumable.sweep_ms:3600000}")
+    public void deleteExpired() {
+        Date expired = new Date(System.currentTimeMillis() - expiry.toMillis());
+
+        for (ResumableUpload upload : resumableUploadRepository.findByCreationDateBefore(expired)) {
+            if (!active.contains(upload.getId())) {
+                log.info("deleting expired upload {}", upload.getId());
+                delete(upload);
+            }
+        }
+    }
+
+    private Path path(ResumableUpload upload) {
+        return directory.resolve(upload.getId().toString());
+    }
+
+    /**
+     * @return digest of the bytes in front of the offset, null if it was lost
+     */
+    private @Nullable MessageDigest runningDigest(ResumableUpload upload) {
+        if (upload.getOffset() == 0) {
+            return PictureBlobService.newDigest();
+        }
+
+        RunningHash hash = hashes.get(upload.getId());
+        return hash != null && hash.position() == upload.getOffset() ? hash.digest() : null;
+    }
+
+    private record RunningHash(long position, MessageDigest digest) {
+    }
+}
@@ -7,9 +7,12 @@ import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.UniversityDomains;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.Location;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.AuthenticationData;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.User;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.geo.Geocoder;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.ApplicationRepository;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.PictureRepository;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.UserRepository;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.security.PrincipalCache;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.security.TokenVersions;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
 import org.jetbrains.annotations.NotNull;
@@ -42,6 +45,9 @@ public class UserService {
     private final PictureRepository pictureRepository;
     private final PasswordEncoder passwordEncoder;
     private final UniversityDomains universityDomains;
+    private final Geocoder geocoder;
+    private final PrincipalCache principalCache;
+    private final TokenVersions tokenVersions;
 
     @Autowired
     public UserService(
@@ -49,12 +55,18 @@ public class UserService {
             ApplicationRepository applicationRepository,
             PictureRepository pictureRepository,
             PasswordEncoder passwordEncoder,
-            UniversityDomains universityDomains) {
+            UniversityDomains universityDomains,
+            Geocoder geocoder,
+            PrincipalCache principalCache,
+            TokenVersions tokenVersions) {
         this.userRepository = userRepository;
         this.applicationRepository = applicationRepository;
         this.pictureRepository = pictureRepository;
         this.passwordEncoder = passwordEncoder;
         this.universityDomains = universityDomains;
+        this.geocoder = geocoder;
+        this.principalCache = principalCache;
+        this.tokenVersions = tokenVersions;
     }
 
     public List<User> getUsers() {
@@ -120,6 +132,18 @@ public class UserService {
 
         checkIfDataIsValid(mergedUser, updatedBy);
 
+        boolean passwordChanged = !Objects.equals(
+                user.getAuthenticationData().getPassword(), mergedUser.getAuthenticationData().getPassword());
+
+        if (passwordChanged) {
+            AuthenticationData authenticationData = mergedUser.getAuthenticationData();
+            authenticationData.setPasswordVersion(authenticationData.getPasswordVersion() + 1);
+        }
+
+        if (passwordChanged || user.getRole() != mergedUser.getRole()) {
+            invalidateAuthentication(user.getId());
+        }
+
         User updatedUser = userRepository.saveAndFlush(mergedUser);
 
         log.info("updated user with id: {}", updatedUser.getId());
@@ -132,6 +156,9 @@ public class UserService {
 
         User userToUpdate = userRepository.findById(id)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "user not found"));
+        checkCoordinates(specialAddressInput);
+        // coordinates are stored so that listings can be ranked by distance without geocoding again
+        geocoder.locate(specialAddressInput);
         userToUpdate.getDetails().getSpecialAddress().add(specialAddressInput);
         userToUpdate = userRepository.saveAndFlush(userToUpdate);
 
@@ -149,6 +176,8 @@ public class UserService {
 
         Location locationToBeUpdated = getUsersSpecialAddressById(id, specialAddressInput.getId()).get();
 
+        checkCoordinates(specialAddressInput);
+
         if (specialAddressInput.getName() != null) locationToBeUpdated.setName(specialAddressInput.getName());
 
         if (specialAddressInput.getDescription() != null)
@@ -173,11 +202,28 @@ public class UserService {
 
         if (specialAddressInput.getCountry() != null) locationToBeUpdated.setCountry(specialAddressInput.getCountry());
 
+        if (specialAddressInput.hasCoordinates()) {
+            locationToBeUpdated.setLatitude(specialAddressInput.getLatitude());
+            locationToBeUpdated.setLongitude(specialAddressInput.getLongitude());
+        } else if (specialAddressInput.getZipCode() != null || specialAddressInput.getCity() != null) {
+            // the old coordinates belong to the old address
+            locationToBeUpdated.setLatitude(null);
+            locationToBeUpdated.setLongitude(null);
+            geocoder.locate(locationToBeUpdated);
+        }
+
         userToUpdate = userRepository.saveAndFlush(userToUpdate);
         log.info("updated special Location: {} for user with id: {}", specialAddressInput, id);
         return locationToBeUpdated;
     }
 
+    private static void checkCoordinates(Location location) {
+        if (!location.hasValidCoordinates()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "invalid coordinates; latitude and longitude must be given together and in range");
+        }
+    }
+
     public void deleteSpecialLocation(UUID userid, UUID specialaddressID) {
         log.debug("deleted special Location: {} for user with id: {}", specialaddressID, userid);
         User userToUpdate = userRepository.findById(userid)
@@ -198,6 +244,7 @@ public class UserService {
         pictureRepository.delete(user.getDetails().getPicture());
 
         userRepository.delete(user);
+        invalidateAuthentication(user.getId());
 
         log.info("deleted user with id: {}", user.getId());
     }
@@ -210,6 +257,7 @@ public class UserService {
         pictureRepository.delete(findUserID(uuid).get().getDetails().getPicture());
 
         userRepository.deleteById(uuid);
+        invalidateAuthentication(uuid);
 
         log.info("deleted user with id: {}", uuid);
     }
@@ -222,6 +270,12 @@ public class UserService {
         return userRepository.existsByAuthenticationData_Email(email);
     }
 
+    // authenticated requests use the cached role and tokens carry a version of role and password version, both are outdated
+    private void invalidateAuthentication(@NotNull UUID userId) {
+        principalCache.invalidate(userId);
+        tokenVersions.invalidate(userId);
+    }
+
     private @NotNull User mergeUser(@NotNull User user, @NotNull User userInput) {
         user = user.clone();
 
@@ -0,0 +1,72 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.FTPClientPool;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * stores the pictures on the FTP server behind the public picture host, with pooled connections
+ */
+public class FtpPictureStorage implements PictureStorage {
+
+    private final FTPClientPool ftpClientPool;
+    private final String publicUrlPrefix;
+
+    public FtpPictureStorage(FTPClientPool ftpClientPool, String publicUrlPrefix) {
+        this.ftpClientPool = ftpClientPool;
+        this.publicUrlPrefix = publicUrlPrefix;
+    }
+
+    @Override
+    public void store(@NotNull Path source, @NotNull String filename) throws IOException {
+        try (InputStream input = Files.newInputStream(source)) {
+            ftpClientPool.execute(ftpUploader -> {
+                ftpUploader.storeFile(input, filename);
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public void fetch(@NotNull String filename, @NotNull Path target) throws IOException {
+        try (OutputStream output = Files.newOutputStream(target)) {
+            ftpClientPool.execute(ftpUploader -> {
+                ftpUploader.retrieveFile(filename, output);
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public void delete(@NotNull String filename) throws IOException {
+        ftpClientPool.execute(ftpUploader -> {
+            ftpUploader.deleteFile(filename);
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteAll(@NotNull Collection<String> filenames) throws IOException {
+        if (filenames.isEmpty()) {
+            return;
+        }
+
+        ftpClientPool.execute(ftpUploader -> {
+            for (String filename : filenames) {
+                ftpUploader.deleteFile(filename);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public @NotNull String getPublicUrlPrefix() {
+        return publicUrlPrefix;
+    }
+}
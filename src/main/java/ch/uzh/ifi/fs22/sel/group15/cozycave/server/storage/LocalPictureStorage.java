@@ -0,0 +1,83 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * stores the pictures in a directory of the local file system, e.g. for tests, benchmarks or a single server which
+ * serves the directory itself
+ */
+public class LocalPictureStorage implements PictureStorage {
+
+    private final Path root;
+    private final String publicUrlPrefix;
+
+    public LocalPictureStorage(Path root, String publicUrlPrefix) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        this.publicUrlPrefix = publicUrlPrefix;
+
+        Files.createDirectories(this.root);
+    }
+
+    @Override
+    public void store(@NotNull Path source, @NotNull String filename) throws IOException {
+        Path target = resolve(filename);
+        Path partial = target.resolveSibling(target.getFileName() + ".part");
+
+        // the JDK copies between file channels through a mapping of the source, without a buffer on the heap
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+
+            while (position < size) {
+                long transferred = out.transferFrom(in, position, size - position);
+
+                if (transferred <= 0) {
+                    throw new IOException("source of " + filename + " ended after " + position + " bytes");
+                }
+
+                position += transferred;
+            }
+        }
+
+        // readers never see a partially written picture
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void fetch(@NotNull String filename, @NotNull Path target) throws IOException {
+        Files.copy(resolve(filename), target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public void delete(@NotNull String filename) throws IOException {
+        Files.deleteIfExists(resolve(filename));
+    }
+
+    @Override
+    public @NotNull String getPublicUrlPrefix() {
+        return publicUrlPrefix;
+    }
+
+    /**
+     * @return path of a stored file
+     * @throws IOException if the name points outside of the storage directory
+     */
+    public @NotNull Path resolve(@NotNull String filename) throws IOException {
+        Path path = root.resolve(filename).normalize();
+
+        if (!path.getParent().equals(root)) {
+            throw new IOException("invalid picture filename " + filename);
+        }
+
+        return path;
+    }
+}
@@ -0,0 +1,268 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * least recently used copies of stored pictures on the local disk, so that hot listing pictures are served without a
+ * round trip to the storage server. The files are immutable (the names are content addressed), a cached copy never
+ * has to be revalidated.
+ * <p>
+ * A file is pinned while a response reads it and only evicted after the last {@link Content} of it is closed, so the
+ * cache may exceed its size for a while.
+ */
+@Component
+@Slf4j
+public class PictureContentCache {
+
+    private static final String PARTIAL_SUFFIX = ".part";
+
+    private final PictureStorage pictureStorage;
+    private final Path directory;
+    private final long maxBytes;
+
+    // every cached file in access order, guarded by itself
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    // fetches in progress, concurrent requests for the same picture share one
+    private final Map<String, CompletableFuture<Path>> loading = new ConcurrentHashMap<>();
+
+    public PictureContentCache(
+            PictureStorage pictureStorage,
+            @Value("${cozycave.pictures.content_cache.dir:./cache/pictures}") String directory,
+            @Value("${cozycave.pictures.content_cache.max_bytes:536870912}") long maxBytes) throws IOException {
+        this.pictureStorage = pictureStorage;
+        this.directory = Path.of(directory).toAbsolutePath().normalize();
+        this.maxBytes = maxBytes;
+
+        Files.createDirectories(this.directory);
+        restore();
+    }
+
+    /**
+     * @return local copy of the stored file, fetched from the storage if it is not cached. It is not evicted before it
+     * is closed.
+     * @throws IOException if the file could not be fetched
+     */
+    public @NotNull Content get(@NotNull String filename) throws IOException {
+        Path path = resolve(filename);
+
+        while (true) {
+            Content content = pin(filename, path);
+
+            if (content != null) {
+                return content;
+            }
+
+            CompletableFuture<Path> fetch = new CompletableFuture<>();
+            CompletableFuture<Path> running = loading.putIfAbsent(filename, fetch);
+
+            // pinned in the next round, the file is fetched again if it was evicted in between
+            if (running != null) {
+                await(running);
+                continue;
+            }
+
+            try {
+                fetch.complete(fetch(filename, path));
+            } catch (IOException | RuntimeException e) {
+                fetch.completeExceptionally(e);
+            } finally {
+                loading.remove(filename);
+            }
+
+            await(fetch);
+        }
+    }
+
+    private Content pin(String filename, Path path) {
+        synchronized (entries) {
+            Entry entry = entries.get(filename);
+
+            if (entry == null || !Files.exists(path)) {
+                return null;
+            }
+
+            entry.pins++;
+            return new Content(path, () -> unpin(entry));
+        }
+    }
+
+    private void unpin(Entry entry) {
+        synchronized (entries) {
+            entry.pins--;
+
+            if (entry.pins == 0) {
+                evict(null);
+            }
+        }
+    }
+
+    private Path fetch(String filename, Path path) throws IOException {
+        Path partial = directory.resolve(filename + "." + UUID.randomUUID() + PARTIAL_SUFFIX);
+
+        try {
+            pictureStorage.fetch(filename, partial);
+            Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+
+        add(filename, Files.size(path));
+        log.debug("cached picture {}", filename);
+
+        return path;
+    }
+
+    private void add(String filename, long size) {
+        synchronized (entries) {
+            // a file which was fetched again keeps its pins
+            Entry entry = entries.computeIfAbsent(filename, key -> new Entry());
+            totalBytes += size - entry.size;
+            entry.size = size;
+
+            // the new file itself is kept even if it is larger than the whole cache
+            evict(filename);
+        }
+    }
+
+    // must hold the lock of the entries, pinned files are skipped
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Entry> entry = eldest.next();
+
+            if (entry.getKey().equals(keep) || entry.getValue().pins > 0) {
+                continue;
+            }
+
+            eldest.remove();
+            totalBytes -= entry.getValue().size;
+            delete(entry.getKey());
+        }
+    }
+
+    private void delete(String filename) {
+        try {
+            Files.deleteIfExists(resolve(filename));
+        } catch (IOException e) {
+            log.warn("could not evict cached picture {}", filename, e);
+        }
+    }
+
+    // cached files survive a restart, their last modification is the best guess for their last use
+    private void restore() throws IOException {
+        List<Path> files;
+
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(Files::isRegularFile).toList();
+        }
+
+        for (Path file : files) {
+            if (file.getFileName().toString().endsWith(PARTIAL_SUFFIX)) {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        files.stream()
+                .filter(file -> !file.getFileName().toString().endsWith(PARTIAL_SUFFIX))
+                .sorted(Comparator.comparing(PictureContentCache::lastModified))
+                .forEach(file -> add(file.getFileName().toString(), size(file)));
+    }
+
+    private Path resolve(String filename) throws IOException {
+        Path path = directory.resolve(filename).normalize();
+
+        if (!directory.equals(path.getParent())) {
+            throw new IOException("invalid picture filename " + filename);
+        }
+
+        return path;
+    }
+
+    private static Path await(CompletableFuture<Path> fetch) throws IOException {
+        try {
+            return fetch.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IOException("could not fetch picture", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while fetching picture", e);
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // guarded by the lock of the entries
+    private static final class Entry {
+        private long size;
+        // contents which were handed out and not closed yet
+        private int pins;
+    }
+
+    /**
+     * cached file which is pinned until it is closed, closing it more than once has no effect
+     */
+    public static class Content implements Closeable {
+
+        private final Path path;
+        private final Runnable unpin;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Content(Path path, Runnable unpin) {
+            this.path = path;
+            this.unpin = unpin;
+        }
+
+        public @NotNull Path path() {
+            return path;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                unpin.run();
+            }
+        }
+    }
+}
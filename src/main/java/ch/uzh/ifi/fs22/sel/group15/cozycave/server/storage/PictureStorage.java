@@ -0,0 +1,70 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * backend which stores the picture files and serves them under a public URL. The backend is chosen with
+ * {@code cozycave.storage.type}, see {@link ch.uzh.ifi.fs22.sel.group15.cozycave.server.config.StorageConfig}.
+ */
+public interface PictureStorage {
+
+    /**
+     * stores a file, an existing file with the same name is replaced
+     *
+     * @param source   local file to store
+     * @param filename name of the file in the storage
+     * @throws IOException if the file could not be stored
+     */
+    void store(@NotNull Path source, @NotNull String filename) throws IOException;
+
+    /**
+     * copies a stored file into a local file
+     *
+     * @param filename name of the file in the storage
+     * @param target   local file, replaced if it exists
+     * @throws IOException if the file does not exist or could not be copied
+     */
+    void fetch(@NotNull String filename, @NotNull Path target) throws IOException;
+
+    /**
+     * deletes a file, deleting a file which does not exist is not an error
+     *
+     * @throws IOException if the storage could not be reached
+     */
+    void delete(@NotNull String filename) throws IOException;
+
+    /**
+     * @return prefix of the public URLs of all stored files
+     */
+    @NotNull String getPublicUrlPrefix();
+
+    /**
+     * deletes several files, implementations reuse one connection for all of them
+     */
+    default void deleteAll(@NotNull Collection<String> filenames) throws IOException {
+        for (String filename : filenames) {
+            delete(filename);
+        }
+    }
+
+    default @NotNull String publicUrl(@NotNull String filename) {
+        return getPublicUrlPrefix() + filename;
+    }
+
+    /**
+     * @param url public URL of a picture
+     * @return name of the file in this storage or empty if the picture is not stored here (e.g. a gravatar)
+     */
+    default @NotNull Optional<String> filenameOf(@NotNull String url) {
+        if (!url.startsWith(getPublicUrlPrefix())) {
+            return Optional.empty();
+        }
+
+        return Optional.of(url.substring(getPublicUrlPrefix().length()));
+    }
+}
@@ -0,0 +1,320 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.StorageOperation;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.StorageOutboxEntry;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.PictureBlobRepository;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.StorageOutboxRepository;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * transactional outbox for changes on the storage server.
+ * <p>
+ * A change is stored as {@link StorageOutboxEntry} in the transaction of the database change which causes it, so it is
+ * applied if and only if that transaction commits, and the request never waits for the storage server. A single relay
+ * thread applies due entries in batches (one storage session per batch) right after the commit and on a periodic
+ * sweep; failed batches are retried with exponential backoff and dropped after too many attempts.
+ * <p>
+ * A batch is applied in one transaction which locks the blobs of its files and then claims its entries, in the same
+ * order as {@link ch.uzh.ifi.fs22.sel.group15.cozycave.server.service.PictureBlobService#acquire} which cancels the
+ * deletion when the same content is uploaded again. Either the upload removed the entries before, or it waits until
+ * the files are deleted and uploads them after its commit.
+ */
+@Component
+@Slf4j
+public class StorageOutbox {
+
+    // content addressed files and their variants start with the hash of their blob
+    private static final Pattern BLOB_FILENAME = Pattern.compile("^([0-9a-f]{64})[.-].*");
+    private static final int MAX_FAILURES_IN_A_ROW = 3;
+
+    private final StorageOutboxRepository storageOutboxRepository;
+    private final PictureBlobRepository pictureBlobRepository;
+    private final PictureStorage pictureStorage;
+    private final TransactionTemplate transactionTemplate;
+
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration backoff;
+    private final Duration maxBackoff;
+
+    private final ExecutorService relay = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("storage-outbox").setDaemon(true).build());
+    // whether a relay run is already queued, so that many commits in a row start only one run
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    public StorageOutbox(
+            StorageOutboxRepository storageOutboxRepository,
+            PictureBlobRepository pictureBlobRepository,
+            PictureStorage pictureStorage,
+            PlatformTransactionManager transactionManager,
+            @Value("${cozycave.storage.outbox.batch_size:100}") int batchSize,
+            @Value("${cozycave.storage.outbox.max_attempts:10}") int maxAttempts,
+            @Value("${cozycave.storage.outbox.backoff_seconds:5}") long backoffSeconds,
+            @Value("${cozycave.storage.outbox.max_backoff_seconds:3600}") long maxBackoffSeconds) {
+        this.storageOutboxRepository = storageOutboxRepository;
+        this.pictureBlobRepository = pictureBlobRepository;
+        this.pictureStorage = pictureStorage;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.backoff = Duration.ofSeconds(backoffSeconds);
+        this.maxBackoff = Duration.ofSeconds(maxBackoffSeconds);
+    }
+
+    /**
+     * stores the deletion of the files, must be called inside of the transaction which removes their last reference
+     */
+    public void delete(@NotNull Collection<String> filenames) {
+        Date now = new Date();
+
+        for (String filename : filenames) {
+            storageOutboxRepository.save(new StorageOutboxEntry(
+                    null,
+                    now,
+                    StorageOperation.DELETE,
+                    filename,
+                    0,
+                    now,
+                    null
+            ));
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            wake();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                wake();
+            }
+        });
+    }
+
+    /**
+     * drops the pending deletions of the files of the blob, must be called by the transaction which locked the blob to
+     * upload its content again. If the relay is deleting the files right now, this waits until it is done.
+     */
+    public void cancelDelete(@NotNull String hash) {
+        int cancelled = storageOutboxRepository.deleteByFilenameStartingWith(hash);
+
+        if (cancelled > 0) {
+            log.debug("cancelled the deletion of {} files of blob {}", cancelled, hash);
+        }
+    }
+
+    @Scheduled(
+            initialDelayString = "${cozycave.storage.outbox.sweep_ms:10000}",
+            fixedDelayString = "${cozycave.storage.outbox.sweep_ms:10000}")
+    public void sweep() {
+        wake();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // entries which were not applied yet stay stored and are applied after the next start
+        relay.shutdownNow();
+        relay.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private void wake() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            relay.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            scheduled.set(false);
+        }
+    }
+
+    private void drain() {
+        // reset before reading, a commit during this run queues another one
+        scheduled.set(false);
+
+        try {
+            List<StorageOutboxEntry> batch;
+
+            do {
+                batch = storageOutboxRepository.findByNextAttemptLessThanEqualOrderByNextAttemptAsc(
+                        new Date(), PageRequest.of(0, batchSize));
+
+                if (!batch.isEmpty()) {
+                    apply(batch);
+                }
+            } while (batch.size() == batchSize && !Thread.currentThread().isInterrupted());
+        } catch (RuntimeException e) {
+            // the entries stay stored and are applied by the next sweep
+            log.error("could not relay storage outbox", e);
+        }
+    }
+
+    private void apply(List<StorageOutboxEntry> batch) {
+        transactionTemplate.executeWithoutResult(status -> applyLocked(batch));
+    }
+
+    private void applyLocked(List<StorageOutboxEntry> batch) {
+        // the blobs first, sorted so that two transactions always lock them in the same order
+        SortedSet<String> hashes = batch.stream()
+                .map(entry -> blobHash(entry.getFilename()))
+                .flatMap(Optional::stream)
+                .collect(Collectors.toCollection(TreeSet::new));
+        Set<String> inUse = new HashSet<>();
+
+        for (String hash : hashes) {
+            if (isInUse(hash)) {
+                inUse.add(hash);
+            }
+        }
+
+        // entries whose deletion was cancelled in the meantime are gone
+        List<StorageOutboxEntry> claimed = storageOutboxRepository.findByIdInForUpdate(
+                batch.stream().map(StorageOutboxEntry::getId).toList());
+
+        Map<Boolean, List<StorageOutboxEntry>> byUse = claimed.stream()
+                .collect(Collectors.partitioningBy(entry -> blobHash(entry.getFilename())
+                        .filter(inUse::contains)
+                        .isPresent()));
+
+        if (!byUse.get(true).isEmpty()) {
+            // the same content was uploaded again since the deletion was stored, the file is needed again
+            storageOutboxRepository.deleteInBatch(byUse.get(true));
+            log.debug("kept {} files which are in use again", byUse.get(true).size());
+        }
+
+        List<StorageOutboxEntry> due = byUse.get(false);
+
+        if (due.isEmpty()) {
+            return;
+        }
+
+        List<String> filenames = due.stream()
+                .map(StorageOutboxEntry::getFilename)
+                .distinct()
+                .toList();
+
+        try {
+            pictureStorage.deleteAll(filenames);
+        } catch (IOException | RuntimeException e) {
+            log.warn("could not apply {} storage changes in one batch, applying them one by one: {}",
+                    due.size(), e.toString());
+            applyOneByOne(due);
+            return;
+        }
+
+        storageOutboxRepository.deleteInBatch(due);
+        log.debug("deleted {} files from the storage", filenames.size());
+    }
+
+    /**
+     * applies the entries of a failed batch one by one, so that a single failing file does not hold back the others.
+     * After a few failures in a row the storage itself is most likely unavailable, the remaining entries are retried
+     * later without trying each of them.
+     */
+    private void applyOneByOne(List<StorageOutboxEntry> entries) {
+        List<StorageOutboxEntry> applied = new ArrayList<>();
+        List<StorageOutboxEntry> failed = new ArrayList<>();
+        Exception lastCause = null;
+        int failuresInARow = 0;
+
+        for (StorageOutboxEntry entry : entries) {
+            if (failuresInARow >= MAX_FAILURES_IN_A_ROW) {
+                failed.add(entry);
+                continue;
+            }
+
+            try {
+                pictureStorage.delete(entry.getFilename());
+                applied.add(entry);
+                failuresInARow = 0;
+            } catch (IOException | RuntimeException e) {
+                retryOrDrop(List.of(entry), e);
+                lastCause = e;
+                failuresInARow++;
+            }
+        }
+
+        if (!failed.isEmpty()) {
+            retryOrDrop(failed, lastCause);
+        }
+
+        if (!applied.isEmpty()) {
+            storageOutboxRepository.deleteInBatch(applied);
+            log.debug("deleted {} files from the storage", applied.size());
+        }
+    }
+
+    // files from before the content addressing have no blob, they are never referenced again
+    private static Optional<String> blobHash(String filename) {
+        Matcher matcher = BLOB_FILENAME.matcher(filename);
+
+        return matcher.matches() ? Optional.of(matcher.group(1)) : Optional.empty();
+    }
+
+    // locks the blob until the files are deleted, a blob without a reference was left by a rolled back upload
+    private boolean isInUse(String hash) {
+        return pictureBlobRepository.findByHashForUpdate(hash)
+                .filter(blob -> blob.getReferenceCount() > 0)
+                .isPresent();
+    }
+
+    private void retryOrDrop(List<StorageOutboxEntry> batch, Exception cause) {
+        for (StorageOutboxEntry entry : batch) {
+            int attempts = entry.getAttempts() + 1;
+
+            if (attempts >= maxAttempts) {
+                log.error("giving up {} of {} after {} attempts, the file is left on the storage",
+                        entry.getOperation(), entry.getFilename(), attempts, cause);
+                storageOutboxRepository.delete(entry);
+                continue;
+            }
+
+            long delay = Math.min(maxBackoff.toMillis(), backoff.toMillis() << Math.min(attempts - 1, 20));
+
+            entry.setAttempts(attempts);
+            entry.setNextAttempt(new Date(System.currentTimeMillis() + delay));
+            entry.setLastError(abbreviate(String.valueOf(cause)));
+            storageOutboxRepository.save(entry);
+        }
+
+        log.warn("could not apply {} storage changes, retrying later: {}", batch.size(), cause.toString());
+    }
+
+    private static String abbreviate(String message) {
+        return message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+}
@@ -0,0 +1,363 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.upload;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.cache.ListingResponseCache;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.PictureState;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.PictureVariant;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.Picture;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.PictureBlob;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.PictureUpload;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.PictureBlobRepository;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.PictureRepository;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.PictureUploadRepository;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage.PictureStorage;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * uploads picture files to the storage server outside of the request and outside of any database transaction.
+ * <p>
+ * A request only copies the file into the spool directory and stores a {@link PictureUpload} in its transaction. After
+ * the commit the upload is handed to a bounded pool of workers. Failed uploads are retried with exponential backoff, a
+ * periodic sweep picks up retries, uploads which did not fit into the pool and uploads left over from a restart.
+ * <p>
+ * Together with the original the downscaled {@link PictureVariant}s are rendered and stored, their URLs are set on the
+ * picture when it becomes ready. Files are content addressed, one upload serves all pictures with the same content.
+ */
+@Component
+@Slf4j
+public class PictureUploadQueue {
+
+    private final PictureUploadRepository pictureUploadRepository;
+    private final PictureRepository pictureRepository;
+    private final PictureBlobRepository pictureBlobRepository;
+    private final ListingResponseCache listingResponseCache;
+    private final PictureStorage pictureStorage;
+    private final PictureVariantGenerator pictureVariantGenerator;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Path spoolDirectory;
+    private final int maxAttempts;
+    private final Duration backoff;
+    private final Duration maxBackoff;
+
+    private final ThreadPoolExecutor workers;
+    // uploads which are queued in or processed by the pool, so that the sweep does not submit them twice
+    private final Set<UUID> inFlight = ConcurrentHashMap.newKeySet();
+
+    public PictureUploadQueue(
+            PictureUploadRepository pictureUploadRepository,
+            PictureRepository pictureRepository,
+            PictureBlobRepository pictureBlobRepository,
+            ListingResponseCache listingResponseCache,
+            PictureStorage pictureStorage,
+            PictureVariantGenerator pictureVariantGenerator,
+            PlatformTransactionManager transactionManager,
+            @Value("${file.upload-dir:./uploads}") String spoolDirectory,
+            @Value("${cozycave.pictures.upload.workers:4}") int workers,
+            @Value("${cozycave.pictures.upload.queue_capacity:100}") int queueCapacity,
+            @Value("${cozycave.pictures.upload.max_attempts:8}") int maxAttempts,
+            @Value("${cozycave.pictures.upload.backoff_seconds:5}") long backoffSeconds,
+            @Value("${cozycave.pictures.upload.max_backoff_seconds:600}") long maxBackoffSeconds) {
+        this.pictureUploadRepository = pictureUploadRepository;
+        this.pictureRepository = pictureRepository;
+        this.pictureBlobRepository = pictureBlobRepository;
+        this.listingResponseCache = listingResponseCache;
+        this.pictureStorage = pictureStorage;
+        this.pictureVariantGenerator = pictureVariantGenerator;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.spoolDirectory = Path.of(spoolDirectory).toAbsolutePath().normalize();
+        this.maxAttempts = maxAttempts;
+        this.backoff = Duration.ofSeconds(backoffSeconds);
+        this.maxBackoff = Duration.ofSeconds(maxBackoffSeconds);
+        this.workers = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new ThreadFactoryBuilder().setNameFormat("picture-upload-%d").setDaemon(true).build());
+    }
+
+    /**
+     * copies the file into the spool directory and queues its upload. Must be called inside of the transaction which
+     * stores the picture, the upload starts once the transaction is committed and is dropped if it is rolled back.
+     *
+     * @param pictureId id of the stored picture
+     * @param filename  name of the file on the storage server
+     * @param file      uploaded file
+     */
+    public void enqueue(@NotNull UUID pictureId, @NotNull String filename, @NotNull MultipartFile file) {
+        register(pictureId, filename, spool(file, pictureId));
+    }
+
+    /**
+     * moves a local file into the spool directory and queues its upload, see {@link #enqueue(UUID, String,
+     * MultipartFile)}
+     *
+     * @param file local file on the same file system as the spool directory, e.g. a completed resumable upload
+     */
+    public void enqueue(@NotNull UUID pictureId, @NotNull String filename, @NotNull Path file) {
+        Path spooled = spoolDirectory.resolve(pictureId.toString());
+
+        try {
+            Files.createDirectories(spoolDirectory);
+            Files.move(file, spooled, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.error("could not spool picture {} to {}", pictureId, spooled, e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "file couldn't be created");
+        }
+
+        register(pictureId, filename, spooled);
+    }
+
+    private void register(UUID pictureId, String filename, Path spooled) {
+        pictureUploadRepository.save(new PictureUpload(
+                pictureId,
+                new Date(),
+                filename,
+                spooled.toString(),
+                0,
+                new Date(),
+                null
+        ));
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            submit(pictureId);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                submit(pictureId);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    deleteSpooledFile(spooled);
+                }
+            }
+        });
+    }
+
+    @Scheduled(
+            initialDelayString = "${cozycave.pictures.upload.sweep_ms:10000}",
+            fixedDelayString = "${cozycave.pictures.upload.sweep_ms:10000}")
+    public void sweep() {
+        int capacity = workers.getQueue().remainingCapacity();
+
+        if (capacity == 0) {
+            return;
+        }
+
+        pictureUploadRepository
+                .findByNextAttemptLessThanEqualOrderByNextAttemptAsc(new Date(), PageRequest.of(0, capacity))
+                .forEach(upload -> submit(upload.getPictureId()));
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // queued uploads are still stored and continue after the next start
+        workers.shutdownNow();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private void submit(UUID pictureId) {
+        if (!inFlight.add(pictureId)) {
+            return;
+        }
+
+        try {
+            workers.execute(() -> process(pictureId));
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(pictureId);
+            log.debug("upload queue is full, upload of picture {} is left for the next sweep", pictureId);
+        }
+    }
+
+    private void process(UUID pictureId) {
+        try {
+            PictureUpload upload = pictureUploadRepository.findById(pictureId).orElse(null);
+
+            if (upload == null) {
+                return;
+            }
+
+            Path spooled = Path.of(upload.getSpoolPath());
+
+            if (!isReferenced(upload)) {
+                log.debug("all pictures using {} were deleted before its upload", upload.getFilename());
+                finish(upload, null);
+                return;
+            }
+
+            if (!Files.exists(spooled)) {
+                log.error("spooled file {} of picture {} is gone, upload failed", spooled, pictureId);
+                finish(upload, PictureState.FAILED);
+                return;
+            }
+
+            Map<PictureVariant, Path> variants = Map.of();
+            Map<PictureVariant, String> variantUrls = new EnumMap<>(PictureVariant.class);
+
+            try {
+                pictureStorage.store(spooled, upload.getFilename());
+
+                variants = renderVariants(spooled, pictureId);
+                for (Map.Entry<PictureVariant, Path> variant : variants.entrySet()) {
+                    String filename = variantFilename(upload.getFilename(), variant.getKey());
+                    pictureStorage.store(variant.getValue(), filename);
+                    variantUrls.put(variant.getKey(), pictureStorage.publicUrl(filename));
+                }
+            } catch (Exception e) {
+                retryOrFail(upload, e);
+                return;
+            } finally {
+                variants.values().forEach(this::deleteSpooledFile);
+            }
+
+            finish(upload, PictureState.READY, variantUrls);
+            log.info("uploaded picture {} after {} failed attempts", pictureId, upload.getAttempts());
+        } catch (RuntimeException e) {
+            // the upload stays stored and is retried by the next sweep
+            log.error("could not process upload of picture {}", pictureId, e);
+        } finally {
+            inFlight.remove(pictureId);
+        }
+    }
+
+    // the picture which started the upload may be gone while others with the same content still need the file
+    private boolean isReferenced(PictureUpload upload) {
+        return pictureBlobRepository.findByFilename(upload.getFilename()).isPresent()
+                || pictureRepository.existsById(upload.getPictureId());
+    }
+
+    private static String variantFilename(String filename, PictureVariant variant) {
+        int extension = filename.lastIndexOf('.');
+        String name = extension > 0 ? filename.substring(0, extension) : filename;
+
+        return name + "-" + variant.getSuffix() + PictureVariantGenerator.EXTENSION;
+    }
+
+    // a picture without variants is still usable, so rendering problems do not fail the upload
+    private Map<PictureVariant, Path> renderVariants(Path spooled, UUID pictureId) {
+        try {
+            return pictureVariantGenerator.render(spooled);
+        } catch (IOException e) {
+            log.warn("could not render variants of picture {}", pictureId, e);
+            return Map.of();
+        }
+    }
+
+    private void retryOrFail(PictureUpload upload, Exception cause) {
+        int attempts = upload.getAttempts() + 1;
+
+        if (attempts >= maxAttempts) {
+            log.error("upload of picture {} failed {} times, giving up", upload.getPictureId(), attempts, cause);
+            finish(upload, PictureState.FAILED);
+            return;
+        }
+
+        long delay = Math.min(maxBackoff.toMillis(), backoff.toMillis() << Math.min(attempts - 1, 20));
+
+        upload.setAttempts(attempts);
+        upload.setNextAttempt(new Date(System.currentTimeMillis() + delay));
+        upload.setLastError(abbreviate(String.valueOf(cause)));
+        pictureUploadRepository.save(upload);
+
+        log.warn("upload of picture {} failed (attempt {}), retrying in {} ms: {}",
+                upload.getPictureId(), attempts, delay, cause.toString());
+    }
+
+    private void finish(PictureUpload upload, @Nullable PictureState state) {
+        finish(upload, state, Map.of());
+    }
+
+    /**
+     * removes the upload and sets the final state and the variant URLs of the picture
+     *
+     * @param state final state or null if the picture does not exist anymore
+     */
+    private void finish(PictureUpload upload, @Nullable PictureState state, Map<PictureVariant, String> variantUrls) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (state != null) {
+                // locked first, so that no picture starts to reference the content while its pictures are updated
+                Optional<PictureBlob> blob = pictureBlobRepository.findByFilenameForUpdate(upload.getFilename());
+
+                // every picture with the same content waits for this upload
+                for (Picture picture : pictureRepository.findByPictureUrl(pictureStorage.publicUrl(upload.getFilename()))) {
+                    picture.setState(state);
+                    variantUrls.forEach(picture::setVariantUrl);
+                }
+
+                blob.ifPresent(b -> b.setState(state));
+            }
+
+            pictureUploadRepository.delete(upload);
+        });
+
+        deleteSpooledFile(Path.of(upload.getSpoolPath()));
+
+        if (state != null) {
+            // the state is part of the listing responses
+            listingResponseCache.invalidate();
+        }
+    }
+
+    private Path spool(MultipartFile file, UUID pictureId) {
+        Path spooled = spoolDirectory.resolve(pictureId.toString());
+
+        try {
+            Files.createDirectories(spoolDirectory);
+
+            // a part the container already buffered on disk is moved instead of copied (unlike transferTo(Path)), if
+            // spring.servlet.multipart.location is on the same file system as the spool directory this is a rename
+            file.transferTo(spooled.toFile());
+        } catch (IOException e) {
+            log.error("could not spool picture {} to {}", pictureId, spooled, e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "file couldn't be created");
+        }
+
+        return spooled;
+    }
+
+    private void deleteSpooledFile(Path spooled) {
+        try {
+            Files.deleteIfExists(spooled);
+        } catch (IOException e) {
+            log.warn("could not delete spooled file {}", spooled, e);
+        }
+    }
+
+    private static String abbreviate(String message) {
+        return message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+}
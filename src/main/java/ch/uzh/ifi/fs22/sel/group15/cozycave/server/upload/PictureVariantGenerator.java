@@ -0,0 +1,211 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.upload;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.PictureVariant;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * renders the {@link PictureVariant}s of an uploaded picture as compressed JPEGs.
+ * <p>
+ * Decoding and scaling is CPU bound, so it runs on its own small pool instead of the upload workers, which mostly wait
+ * for the storage. Large pictures are subsampled while they are decoded, a picture is never fully decoded at a
+ * resolution much higher than the largest variant it needs.
+ */
+@Component
+@Slf4j
+public class PictureVariantGenerator {
+
+    private static final String FORMAT = "jpeg";
+    public static final String EXTENSION = ".jpg";
+
+    private final ThreadPoolExecutor workers;
+    private final float quality;
+    private final long timeoutSeconds;
+
+    public PictureVariantGenerator(
+            @Value("${cozycave.pictures.variants.workers:2}") int workers,
+            @Value("${cozycave.pictures.variants.quality:0.8}") float quality,
+            @Value("${cozycave.pictures.variants.timeout_seconds:60}") long timeoutSeconds) {
+        // at most one task per upload worker is waiting, so the queue does not need a bound
+        this.workers = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("picture-variants-%d").setDaemon(true).build());
+        this.quality = quality;
+        this.timeoutSeconds = timeoutSeconds;
+
+        // the streams are read from and written to files anyway, no need for another temporary file per stream
+        ImageIO.setUseCache(false);
+    }
+
+    /**
+     * renders the variants next to the source file, the caller has to delete the returned files. Variants which are
+     * not smaller than the picture itself are skipped.
+     *
+     * @return rendered files by variant, empty if the file is not an image ImageIO can read
+     * @throws IOException if the variants could not be rendered in time or could not be written
+     */
+    public @NotNull Map<PictureVariant, Path> render(@NotNull Path source) throws IOException {
+        Future<Map<PictureVariant, Path>> result = workers.submit(() -> renderNow(source));
+
+        try {
+            return result.get(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IOException("could not render variants of " + source, e.getCause());
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            throw new IOException("rendering variants of " + source + " timed out", e);
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while rendering variants of " + source, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    @NotNull Map<PictureVariant, Path> renderNow(@NotNull Path source) throws IOException {
+        Map<PictureVariant, Path> rendered = new EnumMap<>(PictureVariant.class);
+        BufferedImage image = decode(source);
+
+        if (image == null) {
+            log.info("{} is no readable image, no variants are rendered", source);
+            return rendered;
+        }
+
+        try {
+            PictureVariant[] variants = PictureVariant.values();
+            BufferedImage scaled = image;
+
+            // from the largest to the smallest variant, each one is scaled down from the previous one
+            for (int i = variants.length - 1; i >= 0; i--) {
+                PictureVariant variant = variants[i];
+
+                if (variant.getWidth() >= image.getWidth()) {
+                    continue;
+                }
+
+                scaled = scale(scaled, variant.getWidth());
+
+                Path target = source.resolveSibling(source.getFileName() + "-" + variant.getSuffix() + EXTENSION);
+                writeJpeg(scaled, target, quality);
+                rendered.put(variant, target);
+            }
+        } catch (IOException | RuntimeException e) {
+            for (Path path : rendered.values()) {
+                Files.deleteIfExists(path);
+            }
+            throw e;
+        }
+
+        return rendered;
+    }
+
+    /**
+     * @return decoded image, subsampled to at least twice the width of the largest variant, or null if no reader
+     * supports the file
+     */
+    private static BufferedImage decode(Path source) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+
+            try {
+                reader.setInput(input, true, true);
+
+                int largest = PictureVariant.values()[PictureVariant.values().length - 1].getWidth();
+                int subsampling = Math.max(1, reader.getWidth(0) / (2 * largest));
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // halves the image until it is less than twice the target width, a single bilinear step would skip pixels
+    private static BufferedImage scale(BufferedImage image, int width) {
+        BufferedImage current = image;
+
+        while (true) {
+            int nextWidth = Math.max(width, current.getWidth() / 2);
+            int nextHeight = Math.max(1, (int) Math.round((double) current.getHeight() * nextWidth / current.getWidth()));
+
+            BufferedImage next = new BufferedImage(nextWidth, nextHeight, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = next.createGraphics();
+
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                // JPEG has no alpha channel, transparent parts become white
+                graphics.drawImage(current, 0, 0, nextWidth, nextHeight, Color.WHITE, null);
+            } finally {
+                graphics.dispose();
+            }
+
+            current = next;
+
+            if (nextWidth == width) {
+                return current;
+            }
+        }
+    }
+
+    private static void writeJpeg(BufferedImage image, Path target, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(FORMAT).next();
+
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(output);
+
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
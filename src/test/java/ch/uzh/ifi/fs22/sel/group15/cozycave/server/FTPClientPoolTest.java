@@ -0,0 +1,98 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockftpserver.fake.FakeFtpServer;
+import org.mockftpserver.fake.UserAccount;
+import org.mockftpserver.fake.filesystem.DirectoryEntry;
+import org.mockftpserver.fake.filesystem.FileSystem;
+import org.mockftpserver.fake.filesystem.UnixFakeFileSystem;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FTPClientPoolTest {
+
+    private static final String USER = "cozyserver";
+    private static final String PASSWORD = "test";
+
+    private FakeFtpServer server;
+    private FileSystem fileSystem;
+    private FTPClientPool pool;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        fileSystem = new UnixFakeFileSystem();
+        fileSystem.add(new DirectoryEntry("/pictures"));
+
+        server = new FakeFtpServer();
+        server.setServerControlPort(0);
+        server.setFileSystem(fileSystem);
+        server.addUserAccount(new UserAccount(USER, PASSWORD, "/pictures"));
+        server.start();
+
+        while (!server.isStarted()) {
+            Thread.sleep(10);
+        }
+
+        GenericObjectPoolConfig<FTPUploader> config = new GenericObjectPoolConfig<>();
+        config.setMaxWaitMillis(1000);
+
+        pool = new FTPClientPool("localhost", server.getServerControlPort(), USER, PASSWORD, config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+        server.stop();
+    }
+
+    @Test
+    void execute_returnsConnectionForReuse() throws IOException {
+        FTPUploader first = pool.execute(uploader -> {
+            uploader.storeFile(new ByteArrayInputStream(new byte[]{1, 2, 3}), "picture.jpg");
+            return uploader;
+        });
+        FTPUploader second = pool.execute(uploader -> uploader);
+
+        assertSame(first, second);
+        assertEquals(1, pool.getNumIdle());
+        assertEquals(0, pool.getNumActive());
+        assertTrue(fileSystem.exists("/pictures/picture.jpg"));
+    }
+
+    @Test
+    void execute_failedCallback_invalidatesConnection() throws IOException {
+        FTPUploader failed = pool.execute(uploader -> uploader);
+
+        assertThrows(IOException.class, () -> pool.execute(uploader -> {
+            throw new IOException("upload failed");
+        }));
+
+        assertEquals(0, pool.getNumIdle());
+        assertEquals(0, pool.getNumActive());
+        assertNotSame(failed, pool.execute(uploader -> uploader));
+    }
+
+    @Test
+    void execute_deadConnection_replacedOnBorrow() throws IOException {
+        FTPUploader dead = pool.execute(uploader -> uploader);
+        dead.disconnect();
+
+        FTPUploader borrowed = pool.execute(uploader -> {
+            assertTrue(uploader.isAlive());
+            return uploader;
+        });
+
+        assertNotSame(dead, borrowed);
+        assertEquals(1, pool.getNumIdle());
+    }
+}
@@ -0,0 +1,104 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+class ListingResponseCacheFilterTest {
+
+    private ListingResponseCache listingResponseCache;
+    private ListingResponseCacheFilter filter;
+    private AtomicInteger renderCount;
+
+    @BeforeEach
+    void setup() {
+        listingResponseCache = new ListingResponseCache(1024 * 1024, 60);
+        filter = new ListingResponseCacheFilter(listingResponseCache);
+        renderCount = new AtomicInteger();
+    }
+
+    @Test
+    void repeatedRequest_isAnsweredFromCache() throws Exception {
+        MockHttpServletResponse first = perform(request("/v1/listings", null, "limit", "10", "CITY", "Zürich"));
+        // same parameters in a different order
+        MockHttpServletResponse second = perform(request("/v1/listings/", null, "CITY", "Zürich", "limit", "10"));
+
+        assertEquals(1, renderCount.get());
+        assertEquals(200, second.getStatus());
+        assertEquals(first.getContentAsString(), second.getContentAsString());
+        assertNotNull(first.getHeader(HttpHeaders.ETAG));
+        assertEquals(first.getHeader(HttpHeaders.ETAG), second.getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void matchingIfNoneMatch_returnsNotModified() throws Exception {
+        String etag = perform(request("/v1/listings", null, "limit", "10")).getHeader(HttpHeaders.ETAG);
+
+        MockHttpServletResponse response = perform(request("/v1/listings", etag, "limit", "10"));
+
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+        assertEquals(1, renderCount.get());
+    }
+
+    @Test
+    void invalidate_rendersResponseAgain() throws Exception {
+        perform(request("/v1/listings", null, "limit", "10"));
+
+        listingResponseCache.invalidate();
+        perform(request("/v1/listings", null, "limit", "10"));
+
+        assertEquals(2, renderCount.get());
+    }
+
+    @Test
+    void otherPaths_areNotCached() throws Exception {
+        perform(request("/v1/listings/6f9b4c46-1d6c-4a4b-9f4e-6a0d5d4f1e2a/applications", null));
+        perform(request("/v1/listings/6f9b4c46-1d6c-4a4b-9f4e-6a0d5d4f1e2a/applications", null));
+
+        assertEquals(2, renderCount.get());
+    }
+
+    private MockHttpServletRequest request(String path, String ifNoneMatch, String... parameters) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+
+        for (int i = 0; i < parameters.length; i += 2) {
+            request.addParameter(parameters[i], parameters[i + 1]);
+        }
+
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+
+        return request;
+    }
+
+    private MockHttpServletResponse perform(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        HttpServlet controller = new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                int render = renderCount.incrementAndGet();
+                resp.setContentType("application/json");
+                resp.getOutputStream().write(("{\"render\":" + render + "}").getBytes(StandardCharsets.UTF_8));
+            }
+        };
+
+        filter.doFilter(request, response, new MockFilterChain(controller));
+
+        return response;
+    }
+}
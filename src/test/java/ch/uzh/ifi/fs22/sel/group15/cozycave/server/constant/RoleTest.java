@@ -3,9 +3,13 @@ package ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.List;
 import org.junit.jupiter.api.Test;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 
 class RoleTest {
 
@@ -55,6 +59,16 @@ class RoleTest {
         assertEquals(1, Role.LANDLORD.generatePermittedAuthoritiesList().size());
     }
 
+    @Test
+    void generatePermittedAuthoritiesList_precomputed() {
+        assertSame(Role.TEAM.generatePermittedAuthoritiesList(), Role.TEAM.generatePermittedAuthoritiesList());
+        assertEquals(List.of("ROLE_LANDLORD", "ROLE_STUDENT"), Role.STUDENT.generatePermittedAuthoritiesList().stream()
+                .map(SimpleGrantedAuthority::getAuthority)
+                .toList());
+        assertThrows(UnsupportedOperationException.class,
+                () -> Role.ADMIN.generatePermittedAuthoritiesList().add(new SimpleGrantedAuthority("ROLE_INTERNAL")));
+    }
+
     @Test
     void isTeam() {
         assertFalse(Role.STUDENT.isTeam());
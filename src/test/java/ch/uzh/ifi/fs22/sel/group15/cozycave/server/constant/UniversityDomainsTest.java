@@ -5,6 +5,7 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.springframework.core.io.ClassPathResource;
 
 @TestInstance(Lifecycle.PER_CLASS)
 class UniversityDomainsTest {
@@ -48,4 +49,18 @@ class UniversityDomainsTest {
         Assertions.assertFalse(universityDomains.matchesEmail("test@test.uzh.ch"));
         Assertions.assertFalse(universityDomains.matchesEmail("test@google.com"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void matchesEmail_ignoresCase() {
+        Assertions.assertTrue(universityDomains.matchesEmail("Test@UZH.ch"));
+        Assertions.assertFalse(universityDomains.matchesEmail("uzh.ch"));
+    }
+
+    @Test
+    void missingSnapshot_noUniversities() {
+        UniversityDomains empty = new UniversityDomains(new ClassPathResource("universities/missing.json"), "");
+
+        Assertions.assertTrue(empty.getUniversities().isEmpty());
+        Assertions.assertFalse(empty.matchesEmail("test@uzh.ch"));
+    }
+}
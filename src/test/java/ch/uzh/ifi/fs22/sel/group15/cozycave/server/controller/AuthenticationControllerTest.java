@@ -1,10 +1,18 @@
 package ch.uzh.ifi.fs22.sel.group15.cozycave.server.controller;
 
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.Gender;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.Role;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.UniversityDomains;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.AuthenticationData;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.User;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.UserDetails;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.UserRepository;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.dto.LocationDto;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.dto.users.UserPostPutDto;
@@ -13,6 +21,7 @@ import ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.dto.users.UserPostPutDto
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.security.JwtAuthenticationEntryPoint;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.security.JwtAuthenticationFilter;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.security.JwtTokenProvider;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.security.LoginExecutor;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.service.ListingService;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.service.PictureService;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.service.UserService;
@@ -20,21 +29,32 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.time.Instant;
 import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.web.server.ResponseStatusException;
 
 @WebMvcTest(AuthenticationController.class)
+@AutoConfigureMockMvc(addFilters = false)
 @TestPropertySource("classpath:application-test.properties")
 class AuthenticationControllerTest {
 
@@ -56,6 +76,8 @@ class AuthenticationControllerTest {
     @MockBean
     private AuthenticationManager authenticationManager;
     @MockBean
+    private LoginExecutor loginExecutor;
+    @MockBean
     private UniversityDomains universityDomains;
     @MockBean
     private PictureService pictureService;
@@ -65,6 +87,7 @@ class AuthenticationControllerTest {
 
     private UserPostPutDto userFullFeaturedDto;
     private User userFullFeatured;
+    private User registeredUser;
 
     @BeforeEach
     void setUp() {
@@ -93,7 +116,22 @@ class AuthenticationControllerTest {
             null
         ));
 
-
+        registeredUser = User.builder()
+            .id(UUID.randomUUID())
+            .creationDate(Date.from(Instant.now()))
+            .role(Role.STUDENT)
+            .authenticationData(new AuthenticationData(
+                UUID.randomUUID(), "example@test.uzh.ch", "{bcrypt}hash", "0123456789abcdef"))
+            .details(UserDetails.builder()
+                .firstName("Erika")
+                .lastName("Mustermann")
+                .build())
+            .build();
+
+        Mockito.when(userService.findUserByEmail("example@test.uzh.ch")).thenReturn(Optional.of(registeredUser));
+        // runs the login like the executor, on a thread of its own
+        Mockito.when(loginExecutor.submit(Mockito.any())).thenAnswer(invocation ->
+            CompletableFuture.supplyAsync(invocation.<Supplier<?>>getArgument(0)));
     }
 
     @AfterEach
@@ -117,7 +155,59 @@ class AuthenticationControllerTest {
     }
 
     @Test
-    void login() {
+    void login_validPassword_token() throws Exception {
+        Authentication authentication = new UsernamePasswordAuthenticationToken(
+            registeredUser.getId().toString(), null, Role.STUDENT.generatePermittedAuthoritiesList());
+
+        Mockito.when(authenticationManager.authenticate(Mockito.any())).thenReturn(authentication);
+        Mockito.when(jwtTokenProvider.generateToken(authentication)).thenReturn("token");
+
+        MvcResult result = mockMvc.perform(login("p4ssw0rd"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.authentication.token").value("token"));
+
+        // the salt is appended before the password is verified
+        Mockito.verify(authenticationManager).authenticate(Mockito.argThat(token ->
+            token.getCredentials().equals("p4ssw0rd" + registeredUser.getAuthenticationData().getSalt())));
+    }
+
+    @Test
+    void login_wrongPassword_unauthorized() throws Exception {
+        Mockito.when(authenticationManager.authenticate(Mockito.any()))
+            .thenThrow(new BadCredentialsException("Bad credentials"));
+
+        MvcResult result = mockMvc.perform(login("wrong password"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        // the failure inside of the future is not translated by the security filters
+        mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isUnauthorized());
+
+        Mockito.verifyNoInteractions(jwtTokenProvider);
+    }
+
+    @Test
+    void login_unknownEmail_unauthorized() throws Exception {
+        userFullFeaturedDto.getAuthenticationData().setEmail("unknown@test.uzh.ch");
+
+        mockMvc.perform(login("p4ssw0rd"))
+            .andExpect(status().isUnauthorized());
+
+        Mockito.verifyNoInteractions(loginExecutor);
+    }
+
+    private MockHttpServletRequestBuilder login(String password) {
+        userFullFeaturedDto.getAuthenticationData().setPassword(password);
+
+        return put("/v1/auth/login")
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON)
+            .content(asJsonString(userFullFeaturedDto));
     }
 
     private String asJsonString(final Object object) {
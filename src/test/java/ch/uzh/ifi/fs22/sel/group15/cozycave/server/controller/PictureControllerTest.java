@@ -17,10 +17,12 @@ import ch.uzh.ifi.fs22.sel.group15.cozycave.server.service.ApplicationService;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.service.ListingService;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.service.PictureService;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.service.UserService;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage.PictureContentCache;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -28,6 +30,7 @@ import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -36,6 +39,9 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Date;
 import java.time.Instant;
 import java.util.List;
@@ -46,7 +52,10 @@ import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.redirectedUrl;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(PictureController.class)
@@ -146,7 +155,7 @@ class PictureControllerTest {
 
 
 
-        Mockito.doNothing().when(pictureService).deletePictureFromStorageServer(Mockito.any());
+        Mockito.doNothing().when(pictureService).deletePictureFilesFromStorageServer(Mockito.any());
     }
 
     @Test
@@ -243,7 +252,52 @@ class PictureControllerTest {
             .andExpect(status().isNoContent());*/
     }
 
+    @Test
+    void getPictureContent_externalPicture_redirects() throws Exception {
+        Mockito.when(pictureService.findPictureById(picture.getId())).thenReturn(Optional.of(picture));
+        Mockito.when(pictureService.getPictureFile(picture.getPictureUrl())).thenReturn(Optional.empty());
 
+        mockMvc.perform(get("/v1/pictures/{pictureId}/content", picture.getId()))
+            .andExpect(status().isFound())
+            .andExpect(redirectedUrl(picture.getPictureUrl()));
+    }
 
+    @Test
+    void getPictureContent_rangeAndConditionalRequests(@TempDir Path directory) throws Exception {
+        Path file = Files.writeString(directory.resolve("0123abcd.jpg"), "0123456789", StandardCharsets.US_ASCII);
+        picture.setPictureUrl("https://pics.cozycave.ch/0123abcd.jpg");
 
-}
\ No newline at end of file
+        Mockito.when(pictureService.findPictureById(picture.getId())).thenReturn(Optional.of(picture));
+        PictureContentCache.Content content = Mockito.mock(PictureContentCache.Content.class);
+        Mockito.when(content.path()).thenReturn(file);
+        Mockito.when(pictureService.getPictureFile(picture.getPictureUrl())).thenReturn(Optional.of(content));
+
+        mockMvc.perform(get("/v1/pictures/{pictureId}/content", picture.getId()))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"0123abcd.jpg\""))
+            .andExpect(header().exists(HttpHeaders.CACHE_CONTROL))
+            .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+            .andExpect(content().string("0123456789"));
+
+        mockMvc.perform(get("/v1/pictures/{pictureId}/content", picture.getId())
+                .header(HttpHeaders.RANGE, "bytes=2-5"))
+            .andExpect(status().isPartialContent())
+            .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+            .andExpect(content().string("2345"));
+
+        mockMvc.perform(get("/v1/pictures/{pictureId}/content", picture.getId())
+                .header(HttpHeaders.IF_NONE_MATCH, "\"0123abcd.jpg\""))
+            .andExpect(status().isNotModified());
+
+        // the cached file is released after every response
+        Mockito.verify(content, Mockito.times(3)).close();
+    }
+
+    @Test
+    void getPictureContent_unknownVariant_badRequest() throws Exception {
+        Mockito.when(pictureService.findPictureById(picture.getId())).thenReturn(Optional.of(picture));
+
+        mockMvc.perform(get("/v1/pictures/{pictureId}/content", picture.getId()).param("variant", "huge"))
+            .andExpect(status().isBadRequest());
+    }
+}
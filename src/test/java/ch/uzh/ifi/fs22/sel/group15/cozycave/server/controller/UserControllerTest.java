@@ -140,7 +140,7 @@ class UserControllerTest {
         Mockito.when(userService.createUser(Mockito.any(), Mockito.any())).thenReturn(insertedUser);
 
 
-        Mockito.doNothing().when(pictureService).deletePictureFromStorageServer(Mockito.any());
+        Mockito.doNothing().when(pictureService).deletePictureFilesFromStorageServer(Mockito.any());
     }
 
     @Test
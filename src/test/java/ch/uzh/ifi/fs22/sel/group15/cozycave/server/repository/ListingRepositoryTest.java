@@ -0,0 +1,372 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.Gender;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.ListingType;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.PictureState;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.Role;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.controller.ListingController.ListingFilter;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.controller.ListingController.ListingFilter.FilterPair;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.controller.ListingController.ListingFilter.ListingFilters;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.Location;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.Picture;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.listings.Listing;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.AuthenticationData;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.User;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.UserDetails;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.geo.GeoPoint;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.geo.Geocoder;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.geo.ListingGeoIndex;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.geo.ZipCodeGeocoder;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.rest.mapper.ListingMapper;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.search.ListingSearchIndex;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class ListingRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ListingRepository listingRepository;
+
+    @MockBean
+    private CommandLineRunner stupidMock;
+
+    private User publisher;
+
+    private ListingSearchIndex listingSearchIndex;
+
+    private ListingGeoIndex listingGeoIndex;
+
+    private final Geocoder geocoder = new ZipCodeGeocoder(new ClassPathResource("geo/zip_codes.csv"));
+
+    @BeforeEach
+    void setUp() {
+        publisher = persistPublisher("landlord@cozycave.ch");
+
+        persistListing("Room in Oerlikon", 650.0, 14.0, ListingType.ROOM, "8050", "Zürich",
+                List.of(Gender.MALE, Gender.FEMALE), true);
+        persistListing("Flat near ETH", 1800.0, 65.0, ListingType.FLAT, "8006", "Zürich",
+                List.of(Gender.FEMALE), true);
+        persistListing("Dorm in Bern", 450.0, 12.0, ListingType.DORM, "3012", "Bern",
+                List.of(Gender.MALE), false);
+        persistListing("House at the lake", 3200.0, 140.0, ListingType.HOUSE, "8700", "zürich",
+                List.of(Gender.MALE, Gender.FEMALE, Gender.OTHER), true);
+
+        entityManager.flush();
+        entityManager.clear();
+
+        listingSearchIndex = new ListingSearchIndex(listingRepository);
+        listingSearchIndex.rebuild();
+
+        listingGeoIndex = new ListingGeoIndex(listingRepository, geocoder);
+        listingGeoIndex.rebuild();
+    }
+
+    @Test
+    void toSpecification_matchesInMemoryFilter() {
+        List<List<FilterPair>> requests = List.of(
+                List.of(),
+                List.of(filter(ListingFilters.MIN_RENT, 600)),
+                List.of(filter(ListingFilters.MIN_RENT, 600), filter(ListingFilters.MAX_RENT, 2000)),
+                List.of(filter(ListingFilters.MIN_SQM, 13), filter(ListingFilters.MAX_SQM, 100)),
+                List.of(filter(ListingFilters.AVAILABLE_TO, new ArrayList<>(List.of(Gender.MALE)))),
+                List.of(filter(ListingFilters.AVAILABLE_TO, new ArrayList<>(List.of(Gender.MALE, Gender.FEMALE)))),
+                List.of(filter(ListingFilters.LISTING_TYPE, new ArrayList<>(List.of(ListingType.ROOM, ListingType.DORM)))),
+                List.of(filter(ListingFilters.CITY, "Zürich")),
+                List.of(filter(ListingFilters.CITY, "BERN"), filter(ListingFilters.AVAILABLE, false)),
+                List.of(filter(ListingFilters.ZIP_CODE, "3012")),
+                List.of(filter(ListingFilters.AVAILABLE, true)),
+                List.of(filter(ListingFilters.AVAILABLE, false), filter(ListingFilters.MAX_RENT, 500)),
+                List.of(filter(ListingFilters.SEARCH, "zuerich")),
+                List.of(filter(ListingFilters.SEARCH, "eth lake")),
+                List.of(filter(ListingFilters.SEARCH, "3012"), filter(ListingFilters.AVAILABLE, false)),
+                List.of(filter(ListingFilters.SEARCH, "basel")),
+                near(47.385, 8.548, 2.0),
+                near(47.385, 8.548, 10.0),
+                // large enough to check all listings instead of the cells around the point
+                near(47.385, 8.548, 200.0)
+        );
+
+        List<Listing> allListings = listingRepository.findAll();
+
+        for (List<FilterPair> filters : requests) {
+            Set<UUID> expected = ids(ListingFilter.createFilter(allListings).filter(filters).getListingsFiltered());
+
+            Set<UUID> actual = ids(listingRepository.findAll(
+                    ListingFilter.toSpecification(filters, listingSearchIndex::search, listingGeoIndex::withinRadius)));
+
+            assertEquals(expected, actual, "filters: " + filters.stream().map(f -> f.getFilter().name()).toList());
+        }
+    }
+
+    @Test
+    void toSpecification_exactFiltersNarrowInDatabase() {
+        List<Listing> listings = listingRepository.findAll(ListingFilter.toSpecification(
+                List.of(filter(ListingFilters.MIN_RENT, 1000), filter(ListingFilters.AVAILABLE, true)),
+                listingSearchIndex::search, listingGeoIndex::withinRadius));
+
+        assertEquals(Set.of("Flat near ETH", "House at the lake"),
+                listings.stream().map(Listing::getTitle).collect(Collectors.toSet()));
+        assertFalse(listings.stream().anyMatch(l -> l.getRent() < 1000));
+    }
+
+    @Test
+    void toSpecification_cityMatchesExactly() {
+        assertEquals(Set.of("Dorm in Bern"), titles(List.of(filter(ListingFilters.CITY, "Bern"))));
+        assertEquals(Set.of("Room in Oerlikon", "Flat near ETH"), titles(List.of(filter(ListingFilters.CITY, "Zürich"))));
+        assertEquals(Set.of(), titles(List.of(filter(ListingFilters.CITY, "BERN"))));
+    }
+
+    @Test
+    void rank_returnsBestMatchesFirst() {
+        Set<UUID> published = listingRepository.findIds(ListingSpecifications.publishedEquals(true));
+
+        List<String> ranked = listingSearchIndex.rank("flat zuerich", published::contains, 2).stream()
+                .map(id -> listingRepository.findById(id).orElseThrow().getTitle())
+                .toList();
+
+        assertEquals(2, ranked.size());
+        assertEquals("Flat near ETH", ranked.get(0));
+        assertFalse(ranked.contains("Dorm in Bern"));
+    }
+
+    @Test
+    void nearest_returnsClosestListingsFirst() {
+        GeoPoint bern = new GeoPoint(46.948, 7.4474);
+
+        List<String> nearest = listingGeoIndex.nearest(bern, 2, id -> true).stream()
+                .map(id -> listingRepository.findById(id).orElseThrow().getTitle())
+                .toList();
+
+        assertEquals(List.of("Dorm in Bern", "House at the lake"), nearest);
+    }
+
+    @Test
+    void findAll_rendersPageWithConstantNumberOfQueries() {
+        long queriesForFewListings = countQueriesToRenderPage();
+
+        // more listings, each with its own publisher and pictures
+        for (int i = 0; i < 6; i++) {
+            publisher = persistPublisher("landlord" + i + "@cozycave.ch");
+            Listing listing = persistListing("Listing " + i, 1000.0 + i, 30.0, ListingType.FLAT, "8000", "Zürich",
+                    List.of(Gender.FEMALE), true);
+            listing.getPictures().add(entityManager.persist(
+                    new Picture(null, new Date(), publisher, "https://cozycave.ch/" + i + ".jpg")));
+            listing.getFloorplan().add(entityManager.persist(
+                    new Picture(null, new Date(), publisher, "https://cozycave.ch/" + i + "-floorplan.jpg")));
+        }
+        entityManager.flush();
+
+        long queriesForManyListings = countQueriesToRenderPage();
+
+        assertEquals(queriesForFewListings, queriesForManyListings);
+    }
+
+    @Test
+    void findSummaries_readsFieldsWithoutLoadingListings() {
+        Listing room = listingRepository.findAll().stream()
+                .filter(listing -> listing.getTitle().equals("Room in Oerlikon"))
+                .findFirst()
+                .orElseThrow();
+        room.getPictures().add(entityManager.persist(
+                new Picture(null, new Date(), room.getPublisher(), "https://cozycave.ch/room.jpg")));
+        entityManager.flush();
+
+        Statistics statistics = clearStatistics();
+
+        List<ListingSummary> summaries = listingRepository.findSummaries(
+                ListingSpecifications.publishedEquals(true), Sort.by(Sort.Direction.ASC, "rent"), 10);
+
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(List.of("Room in Oerlikon", "Flat near ETH", "House at the lake"),
+                summaries.stream().map(ListingSummary::title).toList());
+        assertEquals("8050", summaries.get(0).zipCode());
+        assertEquals("https://cozycave.ch/room.jpg", summaries.get(0).thumbnailUrl());
+        assertNull(summaries.get(1).thumbnailUrl());
+    }
+
+    @Test
+    void findSummaries_thumbnailOfStoredPicturesOnly() {
+        Map<String, Listing> listings = listingRepository.findAll().stream()
+                .collect(Collectors.toMap(Listing::getTitle, listing -> listing));
+
+        Picture stored = new Picture(null, new Date(), publisher, "https://cozycave.ch/room.jpg");
+        stored.setThumbnailUrl("https://cozycave.ch/room-thumbnail.jpg");
+        listings.get("Room in Oerlikon").getPictures().add(entityManager.persist(stored));
+        listings.get("Flat near ETH").getPictures().add(entityManager.persist(
+                new Picture(null, new Date(), publisher, "https://cozycave.ch/flat.jpg", PictureState.PENDING)));
+        entityManager.flush();
+        entityManager.clear();
+
+        Map<String, ListingSummary> summaries = listingRepository.findSummaries(
+                        ListingSpecifications.publishedEquals(true), Sort.by(Sort.Direction.ASC, "rent"), 10).stream()
+                .collect(Collectors.toMap(ListingSummary::title, summary -> summary));
+
+        assertEquals("https://cozycave.ch/room-thumbnail.jpg", summaries.get("Room in Oerlikon").thumbnailUrl());
+        assertNull(summaries.get("Flat near ETH").thumbnailUrl());
+    }
+
+    @Test
+    void findAll_keysetPagesMatchFullOrder() {
+        Sort sort = Sort.by(Sort.Direction.DESC, "rent").and(Sort.by(Sort.Direction.ASC, "id"));
+        List<UUID> expected = listingRepository.findAll(sort).stream().map(Listing::getId).toList();
+
+        List<UUID> paged = new ArrayList<>();
+        ListingCursor cursor = null;
+
+        do {
+            Specification<Listing> specification = Specification.where(ListingSpecifications.hasValue("rent"));
+            if (cursor != null) {
+                specification = specification.and(ListingSpecifications.after(ListingCursor.decode(cursor.encode())));
+            }
+
+            List<Listing> page = listingRepository.findAll(specification, sort, 3);
+            page = page.subList(0, Math.min(2, page.size()));
+            page.forEach(listing -> paged.add(listing.getId()));
+
+            Listing last = page.get(page.size() - 1);
+            cursor = page.size() == 2
+                    ? new ListingCursor("rent", Sort.Direction.DESC, last.getRent(), last.getId())
+                    : null;
+        } while (cursor != null && paged.size() < expected.size());
+
+        assertEquals(expected, paged);
+    }
+
+    @Test
+    void findPositions_continueAfterLastPosition() {
+        Sort sort = ListingCursor.sort("rent", Sort.Direction.ASC);
+        List<UUID> expected = listingRepository.findAll(sort).stream().map(Listing::getId).toList();
+
+        Specification<Listing> specification = Specification.where(ListingSpecifications.hasValue("rent"));
+        List<ListingCursor> first = listingRepository.findPositions(specification, "rent", Sort.Direction.ASC, 3);
+        List<ListingCursor> rest = listingRepository.findPositions(
+                specification.and(ListingSpecifications.after(first.get(2))), "rent", Sort.Direction.ASC, 3);
+
+        List<UUID> positions = new ArrayList<>();
+        first.forEach(position -> positions.add(position.id()));
+        rest.forEach(position -> positions.add(position.id()));
+
+        assertEquals(expected, positions);
+        assertEquals(450.0, first.get(0).value());
+    }
+
+    private long countQueriesToRenderPage() {
+        Statistics statistics = clearStatistics();
+
+        List<Listing> listings = listingRepository.findAll(Specification.where(null), Sort.by("id"), 100);
+        listings.forEach(ListingMapper.INSTANCE::listingToListingGetDto);
+
+        return statistics.getPrepareStatementCount();
+    }
+
+    private Statistics clearStatistics() {
+        Statistics statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class)
+                .getStatistics();
+        entityManager.clear();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        return statistics;
+    }
+
+    private FilterPair filter(ListingFilters filter, Object value) {
+        return new FilterPair(filter, value);
+    }
+
+    private List<FilterPair> near(double latitude, double longitude, double radiusKm) {
+        return List.of(
+                filter(ListingFilters.NEAR_LAT, latitude),
+                filter(ListingFilters.NEAR_LON, longitude),
+                filter(ListingFilters.RADIUS_KM, radiusKm)
+        );
+    }
+
+    private Set<String> titles(List<FilterPair> filters) {
+        return listingRepository.findAll(ListingFilter.toSpecification(
+                        filters, listingSearchIndex::search, listingGeoIndex::withinRadius)).stream()
+                .map(Listing::getTitle)
+                .collect(Collectors.toSet());
+    }
+
+    private Set<UUID> ids(List<Listing> listings) {
+        return listings.stream().map(Listing::getId).collect(Collectors.toSet());
+    }
+
+    private Location createLocation(String street, String zipCode, String city) {
+        return new Location(null, null, null, street, "1", null, zipCode, city, null, "Switzerland");
+    }
+
+    private User persistPublisher(String email) {
+        return entityManager.persist(new User(
+                null,
+                new Date(),
+                new AuthenticationData(null, email, "password", "0123456789abcdef"),
+                Role.LANDLORD,
+                new UserDetails(
+                        null,
+                        "Max",
+                        "Mustermann",
+                        Gender.MALE,
+                        Date.from(Instant.now().minus(45 * 365, ChronoUnit.DAYS)),
+                        createLocation("Bahnhofstrasse", "8000", "Zürich"),
+                        new ArrayList<>(),
+                        "+41 76 123 45 67",
+                        "bio",
+                        null
+                )
+        ));
+    }
+
+    private Listing persistListing(String title, double rent, double sqm, ListingType listingType, String zipCode,
+                                   String city, List<Gender> availableTo, boolean published) {
+        Listing listing = new Listing(
+                null,
+                new Date(),
+                title,
+                title + " description",
+                createLocation("Teststrasse", zipCode, city),
+                published,
+                sqm,
+                listingType,
+                true,
+                new ArrayList<>(availableTo),
+                true,
+                rent,
+                rent * 2,
+                1.5,
+                publisher,
+                new ArrayList<>(),
+                new ArrayList<>()
+        );
+
+        geocoder.locate(listing.getAddress());
+
+        return entityManager.persist(listing);
+    }
+}
@@ -0,0 +1,106 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.config.SecurityConfig;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.Role;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.AuthenticationData;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.User;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.UserRepository;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * login against the stored hash, with the provider wired like Spring Security does for the password encoder and this
+ * service
+ */
+class IUserDetailsServiceTest {
+
+    private static final String PASSWORD = "p4ssw0rd";
+    private static final String SALT = "0123456789abcdef";
+    private static final int STRENGTH = 4;
+
+    private UserRepository userRepository;
+    private PasswordEncoder passwordEncoder;
+    private DaoAuthenticationProvider authenticationProvider;
+    private User user;
+
+    @BeforeEach
+    void setup() {
+        userRepository = Mockito.mock(UserRepository.class);
+        passwordEncoder = new SecurityConfig(null).passwordEncoder(STRENGTH);
+
+        IUserDetailsService iUserDetailsService = new IUserDetailsService(userRepository);
+
+        authenticationProvider = new DaoAuthenticationProvider();
+        authenticationProvider.setPasswordEncoder(passwordEncoder);
+        authenticationProvider.setUserDetailsService(iUserDetailsService);
+        authenticationProvider.setUserDetailsPasswordService(iUserDetailsService);
+
+        // stored before the hashes were prefixed with the id of their encoder
+        user = User.builder()
+                .id(UUID.randomUUID())
+                .role(Role.STUDENT)
+                .authenticationData(new AuthenticationData(UUID.randomUUID(), "example@test.uzh.ch",
+                        new BCryptPasswordEncoder(STRENGTH).encode(PASSWORD + SALT), SALT))
+                .build();
+
+        Mockito.when(userRepository.findById(user.getId())).thenReturn(Optional.of(user));
+    }
+
+    @Test
+    void legacyHash_authenticates() {
+        assertTrue(authenticate(PASSWORD).isAuthenticated());
+    }
+
+    @Test
+    void legacyHash_rehashedWithPrefix() {
+        long passwordVersion = user.getAuthenticationData().getPasswordVersion();
+
+        authenticate(PASSWORD);
+
+        String hash = user.getAuthenticationData().getPassword();
+        assertTrue(hash.startsWith("{bcrypt}"));
+        assertTrue(passwordEncoder.matches(PASSWORD + SALT, hash));
+        // the same password, issued tokens stay valid
+        assertEquals(passwordVersion, user.getAuthenticationData().getPasswordVersion());
+        Mockito.verify(userRepository).saveAndFlush(user);
+    }
+
+    @Test
+    void prefixedHash_notRehashed() {
+        String hash = passwordEncoder.encode(PASSWORD + SALT);
+        user.getAuthenticationData().setPassword(hash);
+
+        authenticate(PASSWORD);
+
+        assertEquals(hash, user.getAuthenticationData().getPassword());
+        Mockito.verify(userRepository, Mockito.never()).saveAndFlush(Mockito.any());
+    }
+
+    @Test
+    void wrongPassword_notRehashed() {
+        String hash = user.getAuthenticationData().getPassword();
+
+        assertThrows(BadCredentialsException.class, () -> authenticate("wrong password"));
+
+        assertEquals(hash, user.getAuthenticationData().getPassword());
+        Mockito.verify(userRepository, Mockito.never()).saveAndFlush(Mockito.any());
+    }
+
+    private Authentication authenticate(String password) {
+        return authenticationProvider.authenticate(
+                new UsernamePasswordAuthenticationToken(user.getId().toString(), password + SALT));
+    }
+}
@@ -0,0 +1,144 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.Role;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.UserRepository;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class JwtAuthenticationFilterTest {
+
+    private static final String SECRET = "cozycave";
+
+    private final UUID userId = UUID.randomUUID();
+
+    private UserRepository userRepository;
+    private IUserDetailsService iUserDetailsService;
+    private TokenVersions tokenVersions;
+    private JwtTokenProvider jwtTokenProvider;
+    private JwtAuthenticationFilter filter;
+
+    @BeforeEach
+    void setup() {
+        userRepository = Mockito.mock(UserRepository.class);
+        iUserDetailsService = Mockito.mock(IUserDetailsService.class);
+        tokenVersions = new TokenVersions(userRepository, SECRET, 100, 60);
+
+        jwtTokenProvider = new JwtTokenProvider();
+        ReflectionTestUtils.setField(jwtTokenProvider, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(jwtTokenProvider, "expiration", 7);
+        ReflectionTestUtils.setField(jwtTokenProvider, "tokenVersions", tokenVersions);
+
+        filter = new JwtAuthenticationFilter();
+        ReflectionTestUtils.setField(filter, "jwtTokenProvider", jwtTokenProvider);
+        ReflectionTestUtils.setField(filter, "iUserDetailsService", iUserDetailsService);
+        ReflectionTestUtils.setField(filter, "principalCache", new PrincipalCache(100, 60));
+        ReflectionTestUtils.setField(filter, "statelessRoles", true);
+
+        credentials(Role.STUDENT, 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void currentVersion_authoritiesOfClaims() throws Exception {
+        String token = jwtTokenProvider.generateToken(userId, List.of(Role.STUDENT));
+
+        Authentication authentication = authenticate(token);
+
+        assertNotNull(authentication);
+        assertEquals(userId.toString(), authentication.getPrincipal());
+        assertEquals(List.copyOf(Role.STUDENT.generatePermittedAuthoritiesList()),
+                List.copyOf(authentication.getAuthorities()));
+        Mockito.verifyNoInteractions(iUserDetailsService);
+    }
+
+    @Test
+    void passwordChanged_tokenRevoked() throws Exception {
+        String token = jwtTokenProvider.generateToken(userId, List.of(Role.STUDENT));
+
+        credentials(Role.STUDENT, 1);
+        tokenVersions.invalidate(userId);
+
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request(token), new MockHttpServletResponse(), chain);
+
+        // the request continues unauthenticated and is rejected by the entry point if it needs a user
+        assertNotNull(chain.getRequest());
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        Mockito.verifyNoInteractions(iUserDetailsService);
+    }
+
+    @Test
+    void passwordRehashed_tokenValid() throws Exception {
+        String token = jwtTokenProvider.generateToken(userId, List.of(Role.STUDENT));
+
+        // a rehash on login changes the hash, but not the password version
+        tokenVersions.invalidate(userId);
+
+        assertNotNull(authenticate(token));
+    }
+
+    @Test
+    void legacyTokenWithoutVersion_authoritiesOfUser() throws Exception {
+        String token = Jwts.builder()
+                .setSubject(userId.toString())
+                .claim(JwtTokenProvider.ROLES_CLAIM, List.of(Role.TEAM))
+                .signWith(SignatureAlgorithm.HS512, SECRET)
+                .compact();
+
+        Mockito.when(iUserDetailsService.loadUserByUsername(userId.toString())).thenReturn(User.builder()
+                .username(userId.toString())
+                .password("hash")
+                .authorities(Role.STUDENT.generatePermittedAuthoritiesList())
+                .build());
+
+        Authentication authentication = authenticate(token);
+
+        // the unversioned role claim is not trusted
+        assertNotNull(authentication);
+        assertEquals(List.copyOf(Role.STUDENT.generatePermittedAuthoritiesList()),
+                List.copyOf(authentication.getAuthorities()));
+        Mockito.verify(iUserDetailsService).loadUserByUsername(userId.toString());
+    }
+
+    private Authentication authenticate(String token) throws Exception {
+        filter.doFilter(request(token), new MockHttpServletResponse(), new MockFilterChain());
+
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    private static MockHttpServletRequest request(String token) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/v1/users");
+        request.addHeader("Authorization", "Bearer " + token);
+
+        return request;
+    }
+
+    private void credentials(Role role, long passwordVersion) {
+        UserRepository.Credentials credentials = Mockito.mock(UserRepository.Credentials.class);
+        Mockito.when(credentials.getRole()).thenReturn(role);
+        Mockito.when(credentials.getPasswordVersion()).thenReturn(passwordVersion);
+        Mockito.when(userRepository.findCredentialsById(userId)).thenReturn(Optional.of(credentials));
+    }
+}
@@ -0,0 +1,69 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+class LoginExecutorTest {
+
+    private LoginExecutor loginExecutor;
+    private CountDownLatch release;
+
+    @BeforeEach
+    void setup() {
+        loginExecutor = new LoginExecutor(1, 1);
+        release = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        loginExecutor.shutdown();
+    }
+
+    @Test
+    void submit_completesWithResult() throws Exception {
+        release.countDown();
+
+        assertEquals("token", loginExecutor.submit(() -> "token").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void submit_saturated_tooManyRequests() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+
+        // occupies the only worker
+        CompletableFuture<String> running = loginExecutor.submit(() -> {
+            started.countDown();
+            await();
+            return "running";
+        });
+        started.await(5, TimeUnit.SECONDS);
+        // fills the queue
+        CompletableFuture<String> queued = loginExecutor.submit(() -> "queued");
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> loginExecutor.submit(() -> "refused"));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, exception.getStatus());
+
+        release.countDown();
+        assertEquals("running", running.get(5, TimeUnit.SECONDS));
+        assertEquals("queued", queued.get(5, TimeUnit.SECONDS));
+    }
+
+    private void await() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
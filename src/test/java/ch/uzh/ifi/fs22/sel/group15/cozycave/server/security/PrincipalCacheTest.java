@@ -0,0 +1,68 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.Role;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+class PrincipalCacheTest {
+
+    private final UUID userId = UUID.randomUUID();
+
+    private PrincipalCache principalCache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setup() {
+        principalCache = new PrincipalCache(100, 60);
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void get_loadsOnce() {
+        PrincipalCache.Principal first = principalCache.get(userId, this::load);
+        PrincipalCache.Principal second = principalCache.get(userId, this::load);
+
+        assertEquals(1, loads.get());
+        assertEquals(userId.toString(), second.username());
+        assertEquals(first, second);
+    }
+
+    @Test
+    void invalidate_loadsAgain() {
+        principalCache.get(userId, this::load);
+
+        principalCache.invalidate(userId);
+        principalCache.get(userId, this::load);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_unknownUser_throwsLoaderException() {
+        assertThrows(UsernameNotFoundException.class, () -> principalCache.get(userId, () -> {
+            throw new UsernameNotFoundException("invalid token: user not found");
+        }));
+
+        // failed loads are not cached
+        principalCache.get(userId, this::load);
+        assertEquals(1, loads.get());
+    }
+
+    private UserDetails load() {
+        loads.incrementAndGet();
+
+        return User.builder()
+                .username(userId.toString())
+                .password("hash")
+                .authorities(Role.STUDENT.generatePermittedAuthoritiesList())
+                .build();
+    }
+}
@@ -0,0 +1,75 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.Role;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.UserRepository;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class TokenVersionsTest {
+
+    private final UUID userId = UUID.randomUUID();
+
+    private UserRepository userRepository;
+    private TokenVersions tokenVersions;
+
+    @BeforeEach
+    void setup() {
+        userRepository = Mockito.mock(UserRepository.class);
+        tokenVersions = new TokenVersions(userRepository, "cozycave", 100, 60);
+    }
+
+    @Test
+    void get_loadsOnce() {
+        credentials(Role.STUDENT, 0);
+
+        long version = tokenVersions.get(userId);
+
+        assertTrue(tokenVersions.matches(userId, version));
+        Mockito.verify(userRepository, Mockito.times(1)).findCredentialsById(userId);
+    }
+
+    @Test
+    void passwordChange_revokesVersion() {
+        credentials(Role.STUDENT, 0);
+        long version = tokenVersions.get(userId);
+
+        credentials(Role.STUDENT, 1);
+        tokenVersions.invalidate(userId);
+
+        assertFalse(tokenVersions.matches(userId, version));
+    }
+
+    @Test
+    void roleChange_revokesVersion() {
+        credentials(Role.STUDENT, 0);
+        long version = tokenVersions.get(userId);
+
+        credentials(Role.TEAM, 0);
+        tokenVersions.invalidate(userId);
+
+        assertNotEquals(version, tokenVersions.get(userId));
+    }
+
+    @Test
+    void unknownUser_neverMatches() {
+        Mockito.when(userRepository.findCredentialsById(userId)).thenReturn(Optional.empty());
+
+        assertEquals(TokenVersions.NO_USER, tokenVersions.get(userId));
+        assertFalse(tokenVersions.matches(userId, TokenVersions.NO_USER));
+    }
+
+    private void credentials(Role role, long passwordVersion) {
+        UserRepository.Credentials credentials = Mockito.mock(UserRepository.Credentials.class);
+        Mockito.when(credentials.getRole()).thenReturn(role);
+        Mockito.when(credentials.getPasswordVersion()).thenReturn(passwordVersion);
+        Mockito.when(userRepository.findCredentialsById(userId)).thenReturn(Optional.of(credentials));
+    }
+}
@@ -1,5 +1,6 @@
 package ch.uzh.ifi.fs22.sel.group15.cozycave.server.service;
 
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.cache.ListingResponseCache;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.Gender;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.ListingType;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.Role;
@@ -9,10 +10,13 @@ import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.listings.Listing;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.AuthenticationData;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.User;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.UserDetails;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.geo.Geocoder;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.geo.ListingGeoIndex;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.ApplicationRepository;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.ListingRepository;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.PictureRepository;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.UserRepository;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.search.ListingSearchIndex;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
@@ -44,6 +48,18 @@ class ListingServiceTest {
     @Mock
     private PictureRepository pictureRepository;
 
+    @Mock
+    private ListingSearchIndex listingSearchIndex;
+
+    @Mock
+    private ListingGeoIndex listingGeoIndex;
+
+    @Mock
+    private Geocoder geocoder;
+
+    @Mock
+    private ListingResponseCache listingResponseCache;
+
     @InjectMocks
     private UserService userService;
 
@@ -213,6 +229,41 @@ class ListingServiceTest {
 
     }
 
+    @Test
+    public void createListing_coordinatesOutOfRange() {
+        testListing.getAddress().setLatitude(91.0);
+        testListing.getAddress().setLongitude(8.54);
+
+        ResponseStatusException exception =
+                assertThrows(ResponseStatusException.class, () -> listingService.createListing(testListing));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+        Mockito.verify(listingRepository, Mockito.never()).saveAndFlush(Mockito.any());
+    }
+
+    @Test
+    public void updateListing_changedAddress_dropsOldCoordinates() {
+        testListing.getAddress().setLatitude(47.37);
+        testListing.getAddress().setLongitude(8.54);
+        Mockito.when(listingRepository.findById(testListing.getId())).thenReturn(Optional.of(testListing));
+        Mockito.when(listingRepository.saveAndFlush(Mockito.any())).thenAnswer(i -> i.getArgument(0));
+
+        Location movedAddress = testListing.getAddress().clone();
+        movedAddress.setZipCode("3012");
+        movedAddress.setCity("Bern");
+
+        Listing listingInput = new Listing();
+        listingInput.setId(testListing.getId());
+        listingInput.setAddress(movedAddress);
+
+        Listing updatedListing = listingService.updateListing(listingInput);
+
+        assertEquals("3012", updatedListing.getAddress().getZipCode());
+        assertNull(updatedListing.getAddress().getLatitude());
+        assertNull(updatedListing.getAddress().getLongitude());
+        Mockito.verify(geocoder).locate(updatedListing.getAddress());
+    }
+
     @Test
     public void updateListing_invalidInputs_Exceptions() {
         assertThrows(ResponseStatusException.class, () -> listingService.updateListing(new Listing()));
@@ -0,0 +1,144 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.PictureState;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.PictureBlob;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.PictureBlobRepository;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage.StorageOutbox;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+
+class PictureBlobServiceTest {
+
+    private static final String HASH = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+    private static final long GRACE_MINUTES = 60;
+
+    @Mock
+    private PictureBlobRepository pictureBlobRepository;
+
+    @Mock
+    private StorageOutbox storageOutbox;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private PictureBlobService pictureBlobService;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+
+        pictureBlobService = new PictureBlobService(pictureBlobRepository, storageOutbox, transactionManager,
+                GRACE_MINUTES);
+    }
+
+    @Test
+    void hash_sha256OfContent() {
+        MockMultipartFile file = new MockMultipartFile("file", "abc.jpg", "image/jpeg",
+                "abc".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(HASH, PictureBlobService.hash(file));
+    }
+
+    @Test
+    void acquire_newContent_upload() {
+        Mockito.when(pictureBlobRepository.existsById(HASH)).thenReturn(false);
+        Mockito.when(pictureBlobRepository.findByHashForUpdate(HASH)).thenReturn(Optional.of(blob(0, PictureState.PENDING)));
+
+        PictureBlobService.Reference reference = pictureBlobService.acquire(HASH, "jpg");
+
+        Mockito.verify(pictureBlobRepository).insertUnreferenced(Mockito.eq(HASH), Mockito.any(), Mockito.eq(HASH + ".jpg"));
+        assertTrue(reference.upload());
+        assertEquals(HASH + ".jpg", reference.blob().getFilename());
+        assertEquals(1, reference.blob().getReferenceCount());
+        assertEquals(PictureState.PENDING, reference.blob().getState());
+        Mockito.verify(storageOutbox).cancelDelete(HASH);
+    }
+
+    @Test
+    void acquire_newContentInsertedConcurrently_reuse() {
+        Mockito.when(pictureBlobRepository.existsById(HASH)).thenReturn(false);
+        Mockito.doThrow(new DataIntegrityViolationException("duplicate key"))
+                .when(pictureBlobRepository).insertUnreferenced(Mockito.eq(HASH), Mockito.any(), Mockito.any());
+        PictureBlob blob = blob(1, PictureState.PENDING);
+        Mockito.when(pictureBlobRepository.findByHashForUpdate(HASH)).thenReturn(Optional.of(blob));
+
+        PictureBlobService.Reference reference = pictureBlobService.acquire(HASH, "jpg");
+
+        assertFalse(reference.upload());
+        assertEquals(2, blob.getReferenceCount());
+    }
+
+    @Test
+    void acquire_knownContent_noUpload() {
+        PictureBlob blob = blob(1, PictureState.READY);
+        Mockito.when(pictureBlobRepository.existsById(HASH)).thenReturn(true);
+        Mockito.when(pictureBlobRepository.findByHashForUpdate(HASH)).thenReturn(Optional.of(blob));
+
+        PictureBlobService.Reference reference = pictureBlobService.acquire(HASH, "png");
+
+        assertFalse(reference.upload());
+        assertEquals(HASH + ".jpg", reference.blob().getFilename());
+        assertEquals(2, blob.getReferenceCount());
+        Mockito.verify(storageOutbox, Mockito.never()).cancelDelete(Mockito.any());
+    }
+
+    @Test
+    void acquire_failedContent_uploadAgain() {
+        PictureBlob blob = blob(1, PictureState.FAILED);
+        Mockito.when(pictureBlobRepository.existsById(HASH)).thenReturn(true);
+        Mockito.when(pictureBlobRepository.findByHashForUpdate(HASH)).thenReturn(Optional.of(blob));
+
+        assertTrue(pictureBlobService.acquire(HASH, "jpg").upload());
+        assertEquals(PictureState.PENDING, blob.getState());
+    }
+
+    @Test
+    void release_lastReference_deletesBlob() {
+        PictureBlob blob = blob(2, PictureState.READY);
+        Mockito.when(pictureBlobRepository.findByFilenameForUpdate(HASH + ".jpg")).thenReturn(Optional.of(blob));
+
+        assertFalse(pictureBlobService.release(HASH + ".jpg"));
+        assertEquals(1, blob.getReferenceCount());
+        Mockito.verify(pictureBlobRepository, Mockito.never()).delete(Mockito.any());
+
+        assertTrue(pictureBlobService.release(HASH + ".jpg"));
+        Mockito.verify(pictureBlobRepository).delete(blob);
+    }
+
+    @Test
+    void release_fileWithoutBlob_delete() {
+        Mockito.when(pictureBlobRepository.findByFilenameForUpdate("legacy.jpg")).thenReturn(Optional.empty());
+
+        assertTrue(pictureBlobService.release("legacy.jpg"));
+    }
+
+    @Test
+    void deleteUnreferenced_olderThanGracePeriod() {
+        long before = System.currentTimeMillis();
+
+        pictureBlobService.deleteUnreferenced();
+
+        ArgumentCaptor<Date> created = ArgumentCaptor.forClass(Date.class);
+        Mockito.verify(pictureBlobRepository).deleteUnreferencedBefore(created.capture());
+        assertEquals(before - TimeUnit.MINUTES.toMillis(GRACE_MINUTES), created.getValue().getTime(), 5000);
+    }
+
+    private static PictureBlob blob(int references, PictureState state) {
+        return new PictureBlob(HASH, new Date(), HASH + ".jpg", references, state);
+    }
+}
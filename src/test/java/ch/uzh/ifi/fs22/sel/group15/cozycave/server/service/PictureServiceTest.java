@@ -1,5 +1,6 @@
 package ch.uzh.ifi.fs22.sel.group15.cozycave.server.service;
 
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.cache.ListingResponseCache;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.Gender;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.ListingType;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.Role;
@@ -9,10 +10,17 @@ import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.listings.Listing;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.AuthenticationData;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.User;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.UserDetails;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.geo.Geocoder;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.geo.ListingGeoIndex;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.ApplicationRepository;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.ListingRepository;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.PictureRepository;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.UserRepository;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.search.ListingSearchIndex;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage.PictureContentCache;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage.PictureStorage;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage.StorageOutbox;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.upload.PictureUploadQueue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
@@ -24,6 +32,7 @@ import org.springframework.web.server.ResponseStatusException;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -42,6 +51,33 @@ class PictureServiceTest {
     @Mock
     private PictureRepository pictureRepository;
 
+    @Mock
+    private ListingSearchIndex listingSearchIndex;
+
+    @Mock
+    private ListingGeoIndex listingGeoIndex;
+
+    @Mock
+    private Geocoder geocoder;
+
+    @Mock
+    private ListingResponseCache listingResponseCache;
+
+    @Mock
+    private PictureUploadQueue pictureUploadQueue;
+
+    @Mock
+    private PictureStorage pictureStorage;
+
+    @Mock
+    private PictureBlobService pictureBlobService;
+
+    @Mock
+    private StorageOutbox storageOutbox;
+
+    @Mock
+    private PictureContentCache pictureContentCache;
+
     @InjectMocks
     private UserService userService;
 
@@ -296,6 +332,16 @@ class PictureServiceTest {
 
     }
 
+    @Test
+    public void deleteAll_singleBulkDelete() {
+        pictureService.deleteAll(testPicturesListing);
+
+        Mockito.verify(pictureRepository).deleteByIdIn(
+                testPicturesListing.stream().map(Picture::getId).collect(Collectors.toList()));
+        Mockito.verify(pictureRepository, Mockito.never()).delete(Mockito.any());
+        Mockito.verify(pictureRepository, Mockito.never()).deleteAll(Mockito.anyIterable());
+    }
+
     @Test
     public void existsPicture() {
         Mockito.when(pictureRepository.existsById(testPicture.getId())).thenReturn(true);
@@ -0,0 +1,140 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.ResumableUpload;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.ResumableUploadRepository;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+class ResumableUploadServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private ResumableUploadRepository resumableUploadRepository;
+    private ResumableUploadService resumableUploadService;
+
+    @BeforeEach
+    void setup() {
+        resumableUploadRepository = Mockito.mock(ResumableUploadRepository.class);
+        resumableUploadService = new ResumableUploadService(resumableUploadRepository, directory.toString(), 1024, 24);
+    }
+
+    @Test
+    void append_chunksInOrder_completeFile() throws Exception {
+        ResumableUpload upload = upload(11);
+
+        assertEquals(6, resumableUploadService.append(upload, 0, chunk("hello ")));
+        assertEquals(11, resumableUploadService.append(upload, 6, chunk("world")));
+
+        Path file = resumableUploadService.completedFile(upload);
+        assertArrayEquals("hello world".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(file));
+        Mockito.verify(resumableUploadRepository, Mockito.times(2)).save(upload);
+    }
+
+    @Test
+    void append_wrongOffset_conflict() {
+        ResumableUpload upload = upload(11);
+        resumableUploadService.append(upload, 0, chunk("hello "));
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> resumableUploadService.append(upload, 0, chunk("hello ")));
+
+        assertEquals(HttpStatus.CONFLICT, exception.getStatus());
+        assertEquals(6, upload.getOffset());
+    }
+
+    @Test
+    void append_chunkLongerThanUpload_keepsLength() throws Exception {
+        ResumableUpload upload = upload(5);
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> resumableUploadService.append(upload, 0, chunk("hello world")));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+        assertEquals(5, upload.getOffset());
+        assertEquals(5, Files.size(resumableUploadService.completedFile(upload)));
+    }
+
+    @Test
+    void completedHash_hashOfReceivedChunks() {
+        ResumableUpload upload = upload(11);
+        resumableUploadService.append(upload, 0, chunk("hello "));
+        resumableUploadService.append(upload, 6, chunk("world"));
+
+        Path file = resumableUploadService.completedFile(upload);
+
+        assertEquals(PictureBlobService.hash(file), resumableUploadService.completedHash(upload));
+        assertEquals(PictureBlobService.hash(file), resumableUploadService.completedHash(upload));
+    }
+
+    @Test
+    void completedHash_interruptedChunk_hashOfStoredBytes() {
+        ResumableUpload upload = upload(5);
+
+        assertThrows(ResponseStatusException.class,
+                () -> resumableUploadService.append(upload, 0, chunk("hello world")));
+
+        assertEquals(PictureBlobService.hash(resumableUploadService.completedFile(upload)),
+                resumableUploadService.completedHash(upload));
+    }
+
+    @Test
+    void completedHash_hashLost_readsFile() {
+        ResumableUpload upload = upload(11);
+        resumableUploadService.append(upload, 0, chunk("hello "));
+
+        // restarted between the chunks
+        resumableUploadService = new ResumableUploadService(resumableUploadRepository, directory.toString(), 1024, 24);
+        resumableUploadService.append(upload, 6, chunk("world"));
+
+        assertEquals(PictureBlobService.hash(resumableUploadService.completedFile(upload)),
+                resumableUploadService.completedHash(upload));
+    }
+
+    @Test
+    void completedFile_incomplete_conflict() {
+        ResumableUpload upload = upload(11);
+        resumableUploadService.append(upload, 0, chunk("hello "));
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> resumableUploadService.completedFile(upload));
+
+        assertEquals(HttpStatus.CONFLICT, exception.getStatus());
+    }
+
+    @Test
+    void delete_removesFile() {
+        ResumableUpload upload = upload(5);
+        resumableUploadService.append(upload, 0, chunk("hello"));
+        Path file = resumableUploadService.completedFile(upload);
+
+        resumableUploadService.delete(upload);
+
+        assertFalse(Files.exists(file));
+        Mockito.verify(resumableUploadRepository).delete(upload);
+    }
+
+    private static ResumableUpload upload(long length) {
+        return new ResumableUpload(UUID.randomUUID(), new Date(), UUID.randomUUID(), UUID.randomUUID(), "plan.png",
+                length, 0);
+    }
+
+    private static ByteArrayInputStream chunk(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
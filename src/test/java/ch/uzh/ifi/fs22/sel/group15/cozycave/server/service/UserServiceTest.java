@@ -10,6 +10,7 @@ import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.Location;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.AuthenticationData;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.User;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.users.UserDetails;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.geo.Geocoder;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.ApplicationRepository;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.ListingRepository;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.PictureRepository;
@@ -17,6 +18,8 @@ import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.UserRepository;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.security.JwtAuthenticationEntryPoint;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.security.JwtAuthenticationFilter;
 import ch.uzh.ifi.fs22.sel.group15.cozycave.server.security.JwtTokenProvider;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.security.PrincipalCache;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.security.TokenVersions;
 import java.sql.Date;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
@@ -27,6 +30,7 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -66,6 +70,12 @@ class UserServiceTest {
     private PasswordEncoder passwordEncoder;
     @Mock
     private UniversityDomains universityDomains;
+    @Mock
+    private Geocoder geocoder;
+    @Mock
+    private PrincipalCache principalCache;
+    @Mock
+    private TokenVersions tokenVersions;
 
 
     @InjectMocks
@@ -323,6 +333,24 @@ class UserServiceTest {
                 .build(), insertedUser));
     }
 
+    @Test
+    void updateUser_passwordChanged_incrementsPasswordVersion() {
+        doReturn(true).when(universityDomains).matchesEmail(Mockito.any());
+        long passwordVersion = insertedUser.getAuthenticationData().getPasswordVersion();
+
+        userService.updateUser(User.builder()
+            .id(insertedUser.getId())
+            .authenticationData(AuthenticationData.builder()
+                .password("new password")
+                .build())
+            .build(), insertedUser);
+
+        ArgumentCaptor<User> saved = ArgumentCaptor.forClass(User.class);
+        Mockito.verify(userRepository).saveAndFlush(saved.capture());
+        Assertions.assertEquals(passwordVersion + 1, saved.getValue().getAuthenticationData().getPasswordVersion());
+        Mockito.verify(tokenVersions).invalidate(insertedUser.getId());
+    }
+
     @Test
     void addSpecialLocation() {
     }
@@ -0,0 +1,70 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LocalPictureStorageTest {
+
+    @TempDir
+    Path directory;
+
+    private LocalPictureStorage storage;
+
+    @BeforeEach
+    void setup() throws IOException {
+        storage = new LocalPictureStorage(directory.resolve("pictures"), "https://pics.example.ch/");
+    }
+
+    @Test
+    void store_copiesFile() throws IOException {
+        byte[] content = new byte[200_000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        Path source = Files.write(directory.resolve("upload"), content);
+
+        storage.store(source, "picture.jpg");
+
+        assertArrayEquals(content, Files.readAllBytes(storage.resolve("picture.jpg")));
+        assertFalse(Files.exists(storage.resolve("picture.jpg.part")));
+        assertTrue(Files.exists(source));
+    }
+
+    @Test
+    void delete_removesFile() throws IOException {
+        Path source = Files.write(directory.resolve("upload"), new byte[]{1, 2, 3});
+        storage.store(source, "picture.jpg");
+
+        storage.delete("picture.jpg");
+        // deleting a missing picture is not an error
+        storage.delete("picture.jpg");
+
+        assertFalse(Files.exists(storage.resolve("picture.jpg")));
+    }
+
+    @Test
+    void resolve_rejectsPathsOutsideOfRoot() {
+        assertThrows(IOException.class, () -> storage.resolve("../upload"));
+        assertThrows(IOException.class, () -> storage.resolve("sub/picture.jpg"));
+    }
+
+    @Test
+    void publicUrl_roundTrip() {
+        String url = storage.publicUrl("picture.jpg");
+
+        assertEquals("https://pics.example.ch/picture.jpg", url);
+        assertEquals(Optional.of("picture.jpg"), storage.filenameOf(url));
+        assertEquals(Optional.empty(), storage.filenameOf("https://www.gravatar.com/avatar/abc"));
+    }
+}
@@ -0,0 +1,89 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+class PictureContentCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private PictureStorage pictureStorage;
+
+    @BeforeEach
+    void setup() throws IOException {
+        pictureStorage = Mockito.spy(new LocalPictureStorage(directory.resolve("storage"), "https://pics.example.ch/"));
+
+        for (String name : new String[]{"a.jpg", "b.jpg", "c.jpg"}) {
+            Path source = Files.write(directory.resolve(name), new byte[100]);
+            pictureStorage.store(source, name);
+        }
+    }
+
+    @Test
+    void get_fetchesOnlyOnce() throws IOException {
+        PictureContentCache cache = new PictureContentCache(pictureStorage, directory.resolve("cache").toString(), 1000);
+
+        Path first = cache.get("a.jpg").path();
+        Path second = cache.get("a.jpg").path();
+
+        assertTrue(Files.isSameFile(first, second));
+        assertArrayEquals(new byte[100], Files.readAllBytes(first));
+        Mockito.verify(pictureStorage, Mockito.times(1)).fetch(Mockito.eq("a.jpg"), Mockito.any());
+    }
+
+    @Test
+    void get_evictsLeastRecentlyUsed() throws IOException {
+        PictureContentCache cache = new PictureContentCache(pictureStorage, directory.resolve("cache").toString(), 250);
+
+        Path a = read(cache, "a.jpg");
+        Path b = read(cache, "b.jpg");
+        read(cache, "a.jpg");
+        read(cache, "c.jpg");
+
+        assertTrue(Files.exists(a));
+        assertFalse(Files.exists(b));
+    }
+
+    @Test
+    void get_pinnedFileEvictedAfterClose() throws IOException {
+        PictureContentCache cache = new PictureContentCache(pictureStorage, directory.resolve("cache").toString(), 150);
+
+        // a response is still streaming a while b is fetched
+        PictureContentCache.Content a = cache.get("a.jpg");
+        PictureContentCache.Content b = cache.get("b.jpg");
+
+        assertTrue(Files.exists(a.path()));
+
+        a.close();
+        a.close();
+
+        assertFalse(Files.exists(a.path()));
+        assertTrue(Files.exists(b.path()));
+        b.close();
+    }
+
+    @Test
+    void get_missingFile_throws() throws IOException {
+        PictureContentCache cache = new PictureContentCache(pictureStorage, directory.resolve("cache").toString(), 1000);
+
+        assertThrows(IOException.class, () -> cache.get("missing.jpg"));
+        assertThrows(IOException.class, () -> cache.get("../storage/a.jpg"));
+    }
+
+    private static Path read(PictureContentCache cache, String filename) throws IOException {
+        try (PictureContentCache.Content content = cache.get(filename)) {
+            return content.path();
+        }
+    }
+}
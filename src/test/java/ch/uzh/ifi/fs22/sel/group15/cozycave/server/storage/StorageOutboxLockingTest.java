@@ -0,0 +1,138 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.StorageOperation;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.StorageOutboxEntry;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.PictureBlobRepository;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.StorageOutboxRepository;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.service.PictureBlobService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * the relay and an upload of the same content in their own transactions on their own threads, against row locks of a
+ * real database
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:outbox;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StorageOutboxLockingTest {
+
+    private static final String HASH = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+    private static final String FILENAME = HASH + ".jpg";
+
+    @Autowired
+    private StorageOutboxRepository storageOutboxRepository;
+
+    @Autowired
+    private PictureBlobRepository pictureBlobRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockBean
+    private CommandLineRunner stupidMock;
+
+    private final PictureStorage pictureStorage = Mockito.mock(PictureStorage.class);
+
+    private StorageOutbox storageOutbox;
+    private PictureBlobService pictureBlobService;
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setup() {
+        storageOutbox = new StorageOutbox(storageOutboxRepository, pictureBlobRepository, pictureStorage,
+                transactionManager, 100, 3, 60, 600);
+        pictureBlobService = new PictureBlobService(pictureBlobRepository, storageOutbox, transactionManager, 60);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    void teardown() throws InterruptedException {
+        storageOutbox.shutdown();
+        storageOutboxRepository.deleteAll();
+        pictureBlobRepository.deleteAll();
+    }
+
+    @Test
+    void acquireWhileRelayDeletes_waitsUntilFileIsDeleted() throws Exception {
+        CountDownLatch deleting = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+        Mockito.doAnswer(invocation -> {
+            deleting.countDown();
+            proceed.await(5, TimeUnit.SECONDS);
+            events.add("deleted");
+            return null;
+        }).when(pictureStorage).deleteAll(Mockito.any());
+
+        // the last reference was released, the relay has claimed the deletion of the file
+        storageOutbox.delete(List.of(FILENAME));
+        assertTrue(deleting.await(5, TimeUnit.SECONDS));
+
+        // the same content is uploaded again meanwhile
+        CompletableFuture<PictureBlobService.Reference> acquired = CompletableFuture.supplyAsync(() -> {
+            PictureBlobService.Reference reference = transactionTemplate.execute(status ->
+                    pictureBlobService.acquire(HASH, "jpg"));
+            events.add("acquired");
+            return reference;
+        });
+
+        Thread.sleep(500);
+        assertFalse(acquired.isDone());
+
+        proceed.countDown();
+        PictureBlobService.Reference reference = acquired.get(5, TimeUnit.SECONDS);
+
+        // the upload starts after the commit of acquire, so the file is stored again after it was deleted
+        assertTrue(reference.upload());
+        assertEquals(List.of("deleted", "acquired"), events);
+        assertEquals(0, storageOutboxRepository.count());
+        assertEquals(1, pictureBlobRepository.findById(HASH).orElseThrow().getReferenceCount());
+    }
+
+    @Test
+    void acquireBeforeRelay_deletionCancelled() {
+        // stored without waking the relay
+        Date now = new Date();
+        storageOutboxRepository.save(new StorageOutboxEntry(null, now, StorageOperation.DELETE, FILENAME, 0, now,
+                null));
+
+        PictureBlobService.Reference reference = transactionTemplate.execute(status ->
+                pictureBlobService.acquire(HASH, "jpg"));
+        storageOutbox.sweep();
+
+        assertTrue(reference.upload());
+        Mockito.verify(pictureStorage, Mockito.after(500).never()).deleteAll(Mockito.any());
+        Mockito.verify(pictureStorage, Mockito.never()).delete(Mockito.any());
+        assertEquals(0, storageOutboxRepository.count());
+    }
+}
@@ -0,0 +1,184 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.PictureState;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.PictureBlob;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.StorageOutboxEntry;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.PictureBlobRepository;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.StorageOutboxRepository;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+
+class StorageOutboxTest {
+
+    private static final String HASH = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    @Mock
+    private StorageOutboxRepository storageOutboxRepository;
+
+    @Mock
+    private PictureBlobRepository pictureBlobRepository;
+
+    @Mock
+    private PictureStorage pictureStorage;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private StorageOutbox storageOutbox;
+
+    private final List<StorageOutboxEntry> stored = new ArrayList<>();
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+
+        Mockito.when(storageOutboxRepository.save(Mockito.any())).then(invocation -> {
+            StorageOutboxEntry entry = invocation.getArgument(0);
+            if (entry.getId() == null) {
+                entry.setId(UUID.randomUUID());
+            }
+            synchronized (stored) {
+                if (!stored.contains(entry)) {
+                    stored.add(entry);
+                }
+            }
+            return entry;
+        });
+        Mockito.when(storageOutboxRepository.findByNextAttemptLessThanEqualOrderByNextAttemptAsc(Mockito.any(), Mockito.any()))
+                .then(invocation -> {
+                    Date now = invocation.getArgument(0);
+                    synchronized (stored) {
+                        return stored.stream().filter(entry -> !entry.getNextAttempt().after(now)).toList();
+                    }
+                });
+        Mockito.when(storageOutboxRepository.findByIdInForUpdate(Mockito.any())).then(invocation -> {
+            Collection<UUID> ids = invocation.getArgument(0);
+            synchronized (stored) {
+                return stored.stream().filter(entry -> ids.contains(entry.getId())).toList();
+            }
+        });
+        Mockito.doAnswer(invocation -> {
+            synchronized (stored) {
+                stored.removeAll(invocation.getArgument(0));
+            }
+            return null;
+        }).when(storageOutboxRepository).deleteInBatch(Mockito.any());
+
+        storageOutbox = new StorageOutbox(storageOutboxRepository, pictureBlobRepository, pictureStorage, transactionManager,
+                100, 3, 60, 600);
+    }
+
+    @AfterEach
+    void teardown() throws InterruptedException {
+        storageOutbox.shutdown();
+    }
+
+    @Test
+    void delete_appliedInOneBatch() throws IOException {
+        storageOutbox.delete(List.of("a.jpg", "a-thumbnail.jpg", "b.jpg"));
+
+        ArgumentCaptor<List<String>> filenames = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(pictureStorage, Mockito.timeout(5000)).deleteAll(filenames.capture());
+        Mockito.verify(storageOutboxRepository, Mockito.timeout(5000)).deleteInBatch(Mockito.any());
+
+        assertEquals(List.of("a.jpg", "a-thumbnail.jpg", "b.jpg"), filenames.getValue());
+    }
+
+    @Test
+    void delete_contentInUseAgain_fileIsKept() throws IOException {
+        Mockito.when(pictureBlobRepository.findByHashForUpdate(HASH)).thenReturn(Optional.of(blob(1)));
+
+        storageOutbox.delete(List.of(HASH + ".jpg", HASH + "-thumbnail.webp", "legacy.jpg"));
+
+        ArgumentCaptor<List<String>> filenames = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(pictureStorage, Mockito.timeout(5000)).deleteAll(filenames.capture());
+        Mockito.verify(storageOutboxRepository, Mockito.timeout(5000).times(2)).deleteInBatch(Mockito.any());
+
+        assertEquals(List.of("legacy.jpg"), filenames.getValue());
+        synchronized (stored) {
+            assertTrue(stored.isEmpty());
+        }
+    }
+
+    @Test
+    void delete_blobWithoutReference_fileIsDeleted() throws IOException {
+        // left by an upload which was rolled back
+        Mockito.when(pictureBlobRepository.findByHashForUpdate(HASH)).thenReturn(Optional.of(blob(0)));
+
+        storageOutbox.delete(List.of(HASH + ".jpg", HASH + "-thumbnail.webp"));
+
+        ArgumentCaptor<List<String>> filenames = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(pictureStorage, Mockito.timeout(5000)).deleteAll(filenames.capture());
+        Mockito.verify(storageOutboxRepository, Mockito.timeout(5000)).deleteInBatch(Mockito.any());
+
+        assertEquals(List.of(HASH + ".jpg", HASH + "-thumbnail.webp"), filenames.getValue());
+    }
+
+    @Test
+    void delete_oneFileFails_othersAreApplied() throws IOException {
+        Mockito.doThrow(new IOException("permission denied")).when(pictureStorage).deleteAll(Mockito.any());
+        Mockito.doThrow(new IOException("permission denied")).when(pictureStorage).delete("b.jpg");
+
+        storageOutbox.delete(List.of("a.jpg", "b.jpg", "c.jpg"));
+
+        ArgumentCaptor<List<StorageOutboxEntry>> applied = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(storageOutboxRepository, Mockito.timeout(5000)).deleteInBatch(applied.capture());
+
+        assertEquals(List.of("a.jpg", "c.jpg"),
+                applied.getValue().stream().map(StorageOutboxEntry::getFilename).toList());
+        synchronized (stored) {
+            assertEquals(1, stored.size());
+            assertEquals("b.jpg", stored.get(0).getFilename());
+            assertEquals(1, stored.get(0).getAttempts());
+        }
+    }
+
+    @Test
+    void delete_storageFails_entryIsRetriedLater() throws IOException {
+        Mockito.doThrow(new IOException("storage unavailable")).when(pictureStorage).deleteAll(Mockito.any());
+        Mockito.doThrow(new IOException("storage unavailable")).when(pictureStorage).delete(Mockito.any());
+
+        storageOutbox.delete(List.of("a.jpg"));
+
+        Mockito.verify(storageOutboxRepository, Mockito.timeout(5000).times(2)).save(Mockito.any());
+
+        StorageOutboxEntry entry;
+        synchronized (stored) {
+            entry = stored.get(0);
+        }
+        assertEquals(1, entry.getAttempts());
+        assertTrue(entry.getNextAttempt().after(new Date()));
+        Mockito.verify(storageOutboxRepository, Mockito.never()).deleteInBatch(Mockito.any());
+    }
+
+    @Test
+    void delete_cancelledBeforeClaimed_fileIsKept() throws IOException {
+        Mockito.when(storageOutboxRepository.findByIdInForUpdate(Mockito.any())).thenReturn(List.of());
+
+        storageOutbox.delete(List.of(HASH + ".jpg"));
+
+        Mockito.verify(storageOutboxRepository, Mockito.timeout(5000)).findByIdInForUpdate(Mockito.any());
+        Mockito.verify(pictureStorage, Mockito.after(200).never()).deleteAll(Mockito.any());
+        Mockito.verify(pictureStorage, Mockito.never()).delete(Mockito.any());
+    }
+
+    private static PictureBlob blob(int references) {
+        return new PictureBlob(HASH, new Date(), HASH + ".jpg", references, PictureState.READY);
+    }
+}
@@ -0,0 +1,242 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.upload;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.cache.ListingResponseCache;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.PictureState;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.PictureVariant;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.Picture;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.PictureBlob;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.entity.PictureUpload;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.PictureBlobRepository;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.PictureRepository;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.repository.PictureUploadRepository;
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.storage.PictureStorage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+class PictureUploadQueueTest {
+
+    private static final String FILENAME = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad.png";
+    private static final String URL = "https://storage.cozycave.ch/" + FILENAME;
+    private static final long BACKOFF_SECONDS = 60;
+    private static final int MAX_ATTEMPTS = 3;
+
+    @TempDir
+    Path directory;
+
+    @Mock
+    private PictureUploadRepository pictureUploadRepository;
+
+    @Mock
+    private PictureRepository pictureRepository;
+
+    @Mock
+    private PictureBlobRepository pictureBlobRepository;
+
+    @Mock
+    private ListingResponseCache listingResponseCache;
+
+    @Mock
+    private PictureStorage pictureStorage;
+
+    @Mock
+    private PictureVariantGenerator pictureVariantGenerator;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private PictureUploadQueue pictureUploadQueue;
+
+    private final Map<UUID, PictureUpload> stored = new ConcurrentHashMap<>();
+    // the worker saves the upload after each failed attempt
+    private final AtomicInteger saves = new AtomicInteger();
+
+    private final UUID pictureId = UUID.randomUUID();
+    private PictureBlob blob;
+
+    @BeforeEach
+    void setup() throws IOException {
+        MockitoAnnotations.openMocks(this);
+
+        Mockito.when(pictureUploadRepository.save(Mockito.any())).then(invocation -> {
+            PictureUpload upload = invocation.getArgument(0);
+            stored.put(upload.getPictureId(), upload);
+            saves.incrementAndGet();
+            return upload;
+        });
+        Mockito.when(pictureUploadRepository.findById(Mockito.any()))
+                .then(invocation -> Optional.ofNullable(stored.get(invocation.<UUID>getArgument(0))));
+        Mockito.doAnswer(invocation -> stored.remove(invocation.<PictureUpload>getArgument(0).getPictureId()))
+                .when(pictureUploadRepository).delete(Mockito.any());
+        Mockito.when(pictureUploadRepository.findByNextAttemptLessThanEqualOrderByNextAttemptAsc(
+                        Mockito.any(), Mockito.any()))
+                .then(invocation -> stored.values().stream()
+                        .filter(upload -> !upload.getNextAttempt().after(invocation.getArgument(0)))
+                        .toList());
+
+        blob = new PictureBlob("hash", new Date(), FILENAME, 1, PictureState.PENDING);
+        Mockito.when(pictureBlobRepository.findByFilename(FILENAME)).thenReturn(Optional.of(blob));
+        Mockito.when(pictureBlobRepository.findByFilenameForUpdate(FILENAME)).thenReturn(Optional.of(blob));
+        Mockito.when(pictureRepository.existsById(pictureId)).thenReturn(true);
+        Mockito.when(pictureStorage.publicUrl(Mockito.anyString()))
+                .then(invocation -> "https://storage.cozycave.ch/" + invocation.getArgument(0));
+        Mockito.when(pictureVariantGenerator.render(Mockito.any())).thenReturn(Map.of());
+
+        pictureUploadQueue = new PictureUploadQueue(pictureUploadRepository, pictureRepository, pictureBlobRepository,
+                listingResponseCache, pictureStorage, pictureVariantGenerator, transactionManager,
+                directory.resolve("spool").toString(), 1, 10, MAX_ATTEMPTS, BACKOFF_SECONDS, 600);
+    }
+
+    @AfterEach
+    void teardown() throws InterruptedException {
+        pictureUploadQueue.shutdown();
+    }
+
+    @Test
+    void enqueue_storageFails_retriedWithGrowingBackoff() throws Exception {
+        Mockito.doThrow(new IOException("connection refused")).when(pictureStorage).store(Mockito.any(), Mockito.any());
+
+        long before = System.currentTimeMillis();
+        pictureUploadQueue.enqueue(pictureId, FILENAME, file("picture"));
+        sweepUntil(() -> saves.get() == 2);
+        PictureUpload upload = stored.get(pictureId);
+
+        assertEquals(1, upload.getAttempts());
+        assertEquals(BACKOFF_SECONDS * 1000, upload.getNextAttempt().getTime() - before, 5000);
+        assertTrue(upload.getLastError().contains("connection refused"));
+
+        // due again
+        upload.setNextAttempt(new Date(0));
+        before = System.currentTimeMillis();
+        sweepUntil(() -> saves.get() == 3);
+
+        assertEquals(2, upload.getAttempts());
+        assertEquals(2 * BACKOFF_SECONDS * 1000, upload.getNextAttempt().getTime() - before, 5000);
+        assertTrue(Files.exists(Path.of(upload.getSpoolPath())));
+        assertEquals(PictureState.PENDING, blob.getState());
+    }
+
+    @Test
+    void enqueue_storageFailsMaxAttempts_failed() throws Exception {
+        Mockito.doThrow(new IOException("connection refused")).when(pictureStorage).store(Mockito.any(), Mockito.any());
+        Picture picture = picture();
+
+        pictureUploadQueue.enqueue(pictureId, FILENAME, file("picture"));
+        Path spooled = spooled();
+
+        for (int attempt = 1; attempt < MAX_ATTEMPTS; attempt++) {
+            int attempts = attempt;
+            sweepUntil(() -> saves.get() == attempts + 1);
+            stored.get(pictureId).setNextAttempt(new Date(0));
+        }
+        sweepUntil(stored::isEmpty);
+
+        // the cache is invalidated last
+        Mockito.verify(listingResponseCache, Mockito.timeout(5000)).invalidate();
+        Mockito.verify(pictureStorage, Mockito.times(MAX_ATTEMPTS)).store(Mockito.any(), Mockito.eq(FILENAME));
+
+        assertEquals(PictureState.FAILED, picture.getState());
+        assertEquals(PictureState.FAILED, blob.getState());
+        assertTrue(stored.isEmpty());
+        assertFalse(Files.exists(spooled));
+    }
+
+    @Test
+    void enqueue_stored_readyWithVariantsOnEveryPicture() throws Exception {
+        Path thumbnail = file("thumbnail");
+        Mockito.when(pictureVariantGenerator.render(Mockito.any()))
+                .thenReturn(Map.of(PictureVariant.THUMBNAIL, thumbnail));
+
+        // a second picture with the same content waits for the same upload
+        Picture picture = picture();
+        Picture sameContent = picture();
+        Mockito.when(pictureRepository.findByPictureUrl(URL)).thenReturn(List.of(picture, sameContent));
+
+        pictureUploadQueue.enqueue(pictureId, FILENAME, file("picture"));
+        Path spooled = spooled();
+
+        Mockito.verify(listingResponseCache, Mockito.timeout(5000)).invalidate();
+
+        String thumbnailFilename = FILENAME.replace(".png", "-thumbnail" + PictureVariantGenerator.EXTENSION);
+        Mockito.verify(pictureStorage).store(Mockito.any(), Mockito.eq(FILENAME));
+        Mockito.verify(pictureStorage).store(thumbnail, thumbnailFilename);
+
+        for (Picture p : List.of(picture, sameContent)) {
+            assertEquals(PictureState.READY, p.getState());
+            assertEquals(pictureStorage.publicUrl(thumbnailFilename), p.getVariantUrl(PictureVariant.THUMBNAIL));
+        }
+        assertEquals(PictureState.READY, blob.getState());
+        assertFalse(Files.exists(spooled));
+        assertFalse(Files.exists(thumbnail));
+        assertTrue(stored.isEmpty());
+    }
+
+    @Test
+    void enqueue_rolledBack_spooledFileDeleted() throws Exception {
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            pictureUploadQueue.enqueue(pictureId, FILENAME, file("picture"));
+            Path spooled = spooled();
+            assertTrue(Files.exists(spooled));
+
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+            }
+
+            assertFalse(Files.exists(spooled));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // nothing is submitted before the commit
+        Mockito.verify(pictureStorage, Mockito.never()).store(Mockito.any(), Mockito.any());
+    }
+
+    // the sweep skips an upload until its worker is done with it
+    private void sweepUntil(BooleanSupplier done) throws InterruptedException {
+        for (int i = 0; i < 500 && !done.getAsBoolean(); i++) {
+            pictureUploadQueue.sweep();
+            Thread.sleep(10);
+        }
+
+        assertTrue(done.getAsBoolean());
+    }
+
+    private Picture picture() {
+        Picture picture = new Picture(UUID.randomUUID(), new Date(), null, URL, PictureState.PENDING);
+        Mockito.when(pictureRepository.findByPictureUrl(URL)).thenReturn(List.of(picture));
+
+        return picture;
+    }
+
+    private Path spooled() {
+        return directory.resolve("spool").resolve(pictureId.toString()).toAbsolutePath().normalize();
+    }
+
+    private Path file(String name) throws IOException {
+        return Files.writeString(directory.resolve(name), name);
+    }
+}
@@ -0,0 +1,77 @@
+package ch.uzh.ifi.fs22.sel.group15.cozycave.server.upload;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.uzh.ifi.fs22.sel.group15.cozycave.server.constant.PictureVariant;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PictureVariantGeneratorTest {
+
+    @TempDir
+    Path directory;
+
+    private PictureVariantGenerator generator;
+
+    @BeforeEach
+    void setup() {
+        generator = new PictureVariantGenerator(1, 0.8f, 30);
+    }
+
+    @AfterEach
+    void teardown() {
+        generator.shutdown();
+    }
+
+    @Test
+    void render_largePicture_allVariants() throws IOException {
+        Path source = image(2000, 1000, "png");
+
+        Map<PictureVariant, Path> variants = generator.render(source);
+
+        assertEquals(PictureVariant.values().length, variants.size());
+        for (Map.Entry<PictureVariant, Path> variant : variants.entrySet()) {
+            BufferedImage rendered = ImageIO.read(variant.getValue().toFile());
+
+            assertEquals(variant.getKey().getWidth(), rendered.getWidth());
+            assertEquals(variant.getKey().getWidth() / 2, rendered.getHeight());
+        }
+    }
+
+    @Test
+    void render_smallPicture_onlySmallerVariants() throws IOException {
+        Path source = image(500, 500, "jpg");
+
+        Map<PictureVariant, Path> variants = generator.render(source);
+
+        assertEquals(1, variants.size());
+        assertTrue(variants.containsKey(PictureVariant.THUMBNAIL));
+    }
+
+    @Test
+    void render_noImage_noVariants() throws IOException {
+        Path source = Files.writeString(directory.resolve("document.pdf"), "%PDF-1.4");
+
+        assertTrue(generator.render(source).isEmpty());
+    }
+
+    private Path image(int width, int height, String format) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x++) {
+            image.setRGB(x, x * height / width, 0xff0000);
+        }
+
+        Path path = directory.resolve("upload." + format);
+        ImageIO.write(image, format, path.toFile());
+        return path;
+    }
+}